@@ -1,186 +1,4657 @@
 package com.mycompany.library_management_system;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.lang.management.ManagementFactory;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
 import javax.swing.JOptionPane;
 
 class Campus implements Serializable {
     private static final long serialVersionUID = 1L;
+    // Persisted with the original ArrayLists so existing data files still load.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("catalog", Catalog.class),
+        new ObjectStreamField("officers", ArrayList.class),
+        new ObjectStreamField("students", ArrayList.class)
+    };
     private String name;
     private Catalog catalog;
-    private ArrayList<Officer> officers;
-    private ArrayList<Student> students;
+    private transient UserRegistry<Officer> officers;
+    private transient UserRegistry<Student> students;
+    private transient LoanTable loans;
+    private transient HoldTable holds;
+    private transient LoanStats loanStats;
 
     public Campus(String name) {
         this.name = name;
         this.catalog = new Catalog();
-        this.officers = new ArrayList<>();
-        this.students = new ArrayList<>();
+        this.officers = new UserRegistry<>();
+        this.students = new UserRegistry<>();
+        this.loans = new LoanTable();
+        this.holds = new HoldTable();
+        this.loanStats = new LoanStats();
     }
 
     public String getName() { return name; }
     public Catalog getCatalog() { return catalog; }
-    public ArrayList<Officer> getOfficers() { return officers; }
-    public ArrayList<Student> getStudents() { return students; }
+    public UserRegistry<Officer> getOfficers() { return officers; }
+    public UserRegistry<Student> getStudents() { return students; }
+    public LoanTable getLoans() { return loans; }
+    public HoldTable getHolds() { return holds; }
+    public LoanStats getLoanStats() { return loanStats; }
+
+    // Re-establishes a stored loan and takes its copy out of the book's holdings. Loans whose book
+    // or copy no longer exists are dropped.
+    boolean restoreLoan(Loan loan) {
+        Book book = catalog.searchBook(loan.bookId);
+        if (book == null || !book.checkOut(loan.copy)) return false;
+        if (loans.add(loan)) return true;
+        book.checkIn(loan.copy);
+        return false;
+    }
+
+    // Re-queues a stored hold after the loans are restored; a hold with a copy set aside takes that
+    // copy off the shelf again. Holds whose book is gone, or whose copy is taken, are dropped.
+    boolean restoreHold(Hold hold) {
+        Book book = catalog.searchBook(hold.bookId);
+        if (book == null || (hold.copy != 0 && !book.checkOut(hold.copy))) return false;
+        holds.restore(hold);
+        return true;
+    }
+
+    // The serialized form keeps loans inside each student, as a map from Book to {borrowed, due}.
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        List<Student> list = students.list();
+        for (Student s : list) {
+            HashMap<Book, Date[]> held = new HashMap<>();
+            for (Loan loan : loans.forStudent(s.id)) {
+                Book book = catalog.searchBook(loan.bookId);
+                if (book != null) held.put(book, new Date[]{new Date(loan.borrowedAt), new Date(loan.dueAt)});
+            }
+            s.legacyLoans = held;
+        }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("name", name);
+        fields.put("catalog", catalog);
+        fields.put("officers", new ArrayList<>(officers.list()));
+        fields.put("students", new ArrayList<>(list));
+        out.writeFields();
+        for (Student s : list) s.legacyLoans = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        name = (String) fields.get("name", null);
+        catalog = (Catalog) fields.get("catalog", null);
+        officers = new UserRegistry<>();
+        students = new UserRegistry<>();
+        loans = new LoanTable();
+        holds = new HoldTable();
+        loanStats = new LoanStats();
+        ArrayList<Officer> storedOfficers = (ArrayList<Officer>) fields.get("officers", null);
+        ArrayList<Student> storedStudents = (ArrayList<Student>) fields.get("students", null);
+        if (storedOfficers != null) storedOfficers.forEach(officers::add);
+        if (storedStudents == null) return;
+        for (Student s : storedStudents) {
+            students.add(s);
+            if (s.legacyLoans != null) {
+                s.legacyLoans.forEach((book, dates) ->
+                    restoreLoan(new Loan(book.getId(), s.id, 1, dates[0].getTime(), dates[1].getTime())));
+            }
+            s.legacyLoans = null;
+        }
+    }
+}
+
+// Users of one kind at a campus, keyed by ID and listed in ID order. IDs are unique: add() refuses
+// a second user with the same ID. Iteration walks a copy, so callers never see a concurrent change.
+class UserRegistry<T extends User> implements Iterable<T> {
+    private final HashMap<String, T> byId = new HashMap<>();
+    private final TreeMap<String, T> ordered = new TreeMap<>();
+
+    public synchronized boolean add(T user) {
+        if (byId.putIfAbsent(user.id, user) != null) return false;
+        ordered.put(user.id, user);
+        return true;
+    }
+
+    public synchronized T remove(String id) {
+        T user = byId.remove(id);
+        if (user != null) ordered.remove(id);
+        return user;
+    }
+
+    public synchronized T get(String id) { return id == null ? null : byId.get(id); }
+    public synchronized boolean contains(String id) { return byId.containsKey(id); }
+    public synchronized int size() { return byId.size(); }
+    public synchronized List<T> list() { return new ArrayList<>(ordered.values()); }
+
+    // Users with IDs after the cursor (exclusive); a null cursor starts at the first user.
+    public synchronized Page<T> page(String after, int limit) {
+        return Page.of((after == null ? ordered : ordered.tailMap(after, false)).values().iterator(), limit, u -> u.id);
+    }
+
+    @Override
+    public Iterator<T> iterator() { return list().iterator(); }
+}
+
+// One page of an ordered listing. `next` is the cursor to pass back for the following page and
+// is null on the last page. Cursors are opaque strings, so any client can page without state.
+final class Page<T> {
+    final List<T> items;
+    final String next;
+
+    Page(List<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    // Takes up to `limit` items; one extra is read only to learn whether another page exists.
+    static <T> Page<T> of(Iterator<T> source, int limit, Function<T, String> cursor) {
+        List<T> items = new ArrayList<>(Math.min(limit, 64));
+        while (items.size() < limit && source.hasNext()) items.add(source.next());
+        String next = source.hasNext() && !items.isEmpty() ? cursor.apply(items.get(items.size() - 1)) : null;
+        return new Page<>(items, next);
+    }
+}
+
+// One active loan of one physical copy, keyed by book ID and copy number so it does not depend
+// on which Book instance is loaded.
+final class Loan {
+    static final byte REMINDER_SENT = 1;
+    static final byte OVERDUE_SENT = 2;
+
+    final String bookId;
+    final String studentId;
+    final int copy;
+    final long borrowedAt;
+    final long dueAt;
+    // Which due-date notices have gone out, so a restart does not repeat them.
+    volatile byte notices;
+
+    Loan(String bookId, String studentId, int copy, long borrowedAt, long dueAt) {
+        this.bookId = bookId;
+        this.studentId = studentId;
+        this.copy = copy;
+        this.borrowedAt = borrowedAt;
+        this.dueAt = dueAt;
+    }
+
+    boolean noticeSent(byte notice) { return (notices & notice) != 0; }
+
+    synchronized void markNoticeSent(byte notice) { notices |= notice; }
+}
+
+// Active loans at a campus, indexed both ways: the copies of a book that are out, and the books a
+// student holds. Both are small arrays replaced on every change, so readers never need a lock.
+class LoanTable {
+    private static final Loan[] NONE = new Loan[0];
+
+    private final ConcurrentHashMap<String, Loan[]> byBook = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Loan[]> byStudent = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    // Returns false if the loan's copy is already out.
+    public boolean add(Loan loan) {
+        boolean[] added = new boolean[1];
+        byBook.compute(loan.bookId, (id, held) -> {
+            if (held != null) {
+                for (Loan l : held) if (l.copy == loan.copy) return held;
+            }
+            added[0] = true;
+            return with(held, loan);
+        });
+        if (!added[0]) return false;
+        byStudent.merge(loan.studentId, new Loan[]{loan}, (held, one) -> with(held, one[0]));
+        active.incrementAndGet();
+        return true;
+    }
+
+    public boolean remove(Loan loan) {
+        boolean[] removed = new boolean[1];
+        byBook.computeIfPresent(loan.bookId, (id, held) -> without(held, loan, removed));
+        if (!removed[0]) return false;
+        byStudent.computeIfPresent(loan.studentId, (id, held) -> without(held, loan, removed));
+        active.decrementAndGet();
+        return true;
+    }
+
+    private static Loan[] with(Loan[] held, Loan loan) {
+        if (held == null) return new Loan[]{loan};
+        Loan[] grown = Arrays.copyOf(held, held.length + 1);
+        grown[held.length] = loan;
+        return grown;
+    }
+
+    private static Loan[] without(Loan[] held, Loan loan, boolean[] removed) {
+        int at = Arrays.asList(held).indexOf(loan);
+        if (at < 0) return held;
+        removed[0] = true;
+        if (held.length == 1) return null;
+        Loan[] shrunk = new Loan[held.length - 1];
+        System.arraycopy(held, 0, shrunk, 0, at);
+        System.arraycopy(held, at + 1, shrunk, at, held.length - at - 1);
+        return shrunk;
+    }
+
+    public List<Loan> forBook(String bookId) {
+        return Arrays.asList(byBook.getOrDefault(bookId, NONE));
+    }
+
+    // The student's loan of a copy of the book, if any; a student holds at most one copy of a title.
+    public Loan find(String studentId, String bookId) {
+        for (Loan loan : byStudent.getOrDefault(studentId, NONE)) {
+            if (loan.bookId.equals(bookId)) return loan;
+        }
+        return null;
+    }
+
+    public List<Loan> forStudent(String studentId) {
+        return Arrays.asList(byStudent.getOrDefault(studentId, NONE));
+    }
+
+    public int count(String studentId) { return byStudent.getOrDefault(studentId, NONE).length; }
+
+    public int size() { return active.get(); }
+
+    public void forEach(Consumer<Loan> action) {
+        for (Loan[] held : byBook.values()) {
+            for (Loan loan : held) action.accept(loan);
+        }
+    }
+}
+
+// A student's place in the queue for a book. Once a copy comes back it is set aside for the hold
+// (copy != 0) until expiresAt, when it passes to the next hold or back to the shelf.
+final class Hold {
+    final String bookId;
+    final String studentId;
+    final long placedAt;
+    // Changed only by HoldTable, under its lock.
+    volatile int copy;
+    volatile long expiresAt;
+
+    Hold(String bookId, String studentId, long placedAt) {
+        this.bookId = bookId;
+        this.studentId = studentId;
+        this.placedAt = placedAt;
+    }
+
+    boolean isReady() { return copy != 0; }
+}
+
+// Hold queues at a campus: a FIFO of waiting holds per book, each student's holds, and the holds
+// with a copy set aside ordered by pickup deadline, so expiry only looks at holds that are due.
+class HoldTable {
+    private static final Comparator<Hold> BY_EXPIRY =
+        Comparator.<Hold>comparingLong(h -> h.expiresAt).thenComparing(h -> h.bookId).thenComparingInt(h -> h.copy);
+
+    private final HashMap<String, ArrayDeque<Hold>> waiting = new HashMap<>();
+    private final HashMap<String, List<Hold>> byStudent = new HashMap<>();
+    private final TreeSet<Hold> ready = new TreeSet<>(BY_EXPIRY);
+
+    public synchronized void place(Hold hold) {
+        waiting.computeIfAbsent(hold.bookId, k -> new ArrayDeque<>()).addLast(hold);
+        byStudent.computeIfAbsent(hold.studentId, k -> new ArrayList<>(2)).add(hold);
+    }
+
+    // Adds a stored hold back in its stored state; waiting holds must be restored in queue order.
+    synchronized void restore(Hold hold) {
+        if (hold.isReady()) {
+            ready.add(hold);
+            byStudent.computeIfAbsent(hold.studentId, k -> new ArrayList<>(2)).add(hold);
+        } else {
+            place(hold);
+        }
+    }
+
+    // Takes the first waiting hold for the book off its queue.
+    public synchronized Hold next(String bookId) {
+        ArrayDeque<Hold> queue = waiting.get(bookId);
+        if (queue == null) return null;
+        Hold hold = queue.pollFirst();
+        if (queue.isEmpty()) waiting.remove(bookId);
+        return hold;
+    }
+
+    public synchronized boolean hasWaiting(String bookId) { return waiting.containsKey(bookId); }
+
+    // Sets a copy aside for a hold taken by next().
+    public synchronized void ready(Hold hold, int copy, long expiresAt) {
+        hold.copy = copy;
+        hold.expiresAt = expiresAt;
+        ready.add(hold);
+    }
+
+    public synchronized boolean remove(Hold hold) {
+        boolean removed;
+        if (hold.isReady()) {
+            removed = ready.remove(hold);
+        } else {
+            ArrayDeque<Hold> queue = waiting.get(hold.bookId);
+            removed = queue != null && queue.remove(hold);
+            if (queue != null && queue.isEmpty()) waiting.remove(hold.bookId);
+        }
+        if (!removed) return false;
+        List<Hold> held = byStudent.get(hold.studentId);
+        held.remove(hold);
+        if (held.isEmpty()) byStudent.remove(hold.studentId);
+        return true;
+    }
+
+    public synchronized Hold find(String studentId, String bookId) {
+        for (Hold hold : byStudent.getOrDefault(studentId, Collections.emptyList())) {
+            if (hold.bookId.equals(bookId)) return hold;
+        }
+        return null;
+    }
+
+    public synchronized List<Hold> forStudent(String studentId) {
+        return new ArrayList<>(byStudent.getOrDefault(studentId, Collections.emptyList()));
+    }
+
+    public synchronized int count(String studentId) { return byStudent.getOrDefault(studentId, Collections.emptyList()).size(); }
+
+    // 1-based place in the book's queue, or 0 once a copy is set aside.
+    public synchronized int position(Hold hold) {
+        if (hold.isReady()) return 0;
+        int position = 1;
+        for (Hold h : waiting.getOrDefault(hold.bookId, new ArrayDeque<>())) {
+            if (h == hold) return position;
+            position++;
+        }
+        return 0;
+    }
+
+    public synchronized int queueLength(String bookId) {
+        ArrayDeque<Hold> queue = waiting.get(bookId);
+        return queue == null ? 0 : queue.size();
+    }
+
+    // Holds whose pickup deadline is at or before `now`, earliest first.
+    public synchronized List<Hold> expired(long now) {
+        List<Hold> due = new ArrayList<>();
+        for (Hold hold : ready) {
+            if (hold.expiresAt > now) break;
+            due.add(hold);
+        }
+        return due;
+    }
+
+    // Removes every hold on a book that has left the catalog.
+    public synchronized List<Hold> drop(String bookId) {
+        List<Hold> dropped = new ArrayList<>();
+        for (Hold hold : ready) if (hold.bookId.equals(bookId)) dropped.add(hold);
+        ArrayDeque<Hold> queue = waiting.get(bookId);
+        if (queue != null) dropped.addAll(queue);
+        for (Hold hold : dropped) remove(hold);
+        return dropped;
+    }
+
+    public synchronized int size() { return ready.size() + waiting.values().stream().mapToInt(ArrayDeque::size).sum(); }
+
+    // Ready holds first, then each book's queue in order, as restore() expects.
+    public synchronized List<Hold> list() {
+        List<Hold> all = new ArrayList<>(ready);
+        for (ArrayDeque<Hold> queue : waiting.values()) all.addAll(queue);
+        return all;
+    }
 }
 
+// A bibliographic record and the physical copies held under it, numbered 1..copies. Which copies
+// are out is derived from the campus's loans; it changes only under the book's circulation lock,
+// while the available-copy counter can be read without one.
 class Book implements Serializable {
     private static final long serialVersionUID = 1L;
     private String id;
     private String title;
     private String author;
     private String category;
-    private boolean available;
     private String campus;
+    // Absent (0) in data written before copies existed, which held a single copy.
+    private volatile int copies;
+    private transient BitSet onLoan;
+    private transient AtomicInteger availableCopies;
+    private transient volatile Catalog catalog;
+
+    public Book(String id, String title, String author, String category, String campus) {
+        this(id, title, author, category, campus, 1);
+    }
+
+    public Book(String id, String title, String author, String category, String campus, int copies) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.category = category;
+        this.campus = campus;
+        this.copies = Math.max(1, copies);
+        initHoldings();
+    }
+
+    private void initHoldings() {
+        onLoan = new BitSet();
+        availableCopies = new AtomicInteger(copies);
+    }
+
+    public String getId() { return id; }
+    public String getTitle() { return title; }
+    public String getAuthor() { return author; }
+    public String getCategory() { return category; }
+    public String getCampus() { return campus; }
+    public int getCopies() { return copies; }
+    public int getAvailableCopies() { return availableCopies.get(); }
+    public boolean isAvailable() { return availableCopies.get() > 0; }
+    public boolean isOnLoan() { return availableCopies.get() < copies; }
+
+    // Takes the lowest-numbered free copy and returns its number, or 0 if every copy is out.
+    int checkOut() {
+        if (availableCopies.get() == 0) return 0;
+        int copy = onLoan.nextClearBit(0) + 1;
+        return checkOut(copy) ? copy : 0;
+    }
+
+    // Takes a specific copy; false if there is no such copy or it is already out.
+    boolean checkOut(int copy) {
+        if (copy < 1 || copy > copies || onLoan.get(copy - 1)) return false;
+        boolean wasAvailable = isAvailable(), wasOnLoan = isOnLoan();
+        onLoan.set(copy - 1);
+        availableCopies.decrementAndGet();
+        holdingsChanged(wasAvailable, wasOnLoan);
+        return true;
+    }
+
+    boolean checkIn(int copy) {
+        if (copy < 1 || !onLoan.get(copy - 1)) return false;
+        boolean wasAvailable = isAvailable(), wasOnLoan = isOnLoan();
+        onLoan.clear(copy - 1);
+        availableCopies.incrementAndGet();
+        holdingsChanged(wasAvailable, wasOnLoan);
+        return true;
+    }
+
+    // Adds or withdraws copies from the end; a copy that is out cannot be withdrawn.
+    boolean setCopies(int count) {
+        if (count < 1 || count < onLoan.length()) return false;
+        boolean wasAvailable = isAvailable(), wasOnLoan = isOnLoan();
+        availableCopies.addAndGet(count - copies);
+        copies = count;
+        holdingsChanged(wasAvailable, wasOnLoan);
+        return true;
+    }
+
+    private void holdingsChanged(boolean wasAvailable, boolean wasOnLoan) {
+        if (catalog != null && (wasAvailable != isAvailable() || wasOnLoan != isOnLoan())) catalog.availabilityChanged(this);
+    }
+
+    public void updateDetails(String title, String author, String category) {
+        if (catalog != null) catalog.unindex(this);
+        this.title = title;
+        this.author = author;
+        this.category = category;
+        if (catalog != null) catalog.index(this);
+    }
+
+    Catalog getCatalog() { return catalog; }
+    void setCatalog(Catalog catalog) { this.catalog = catalog; }
+
+    // Loans are restored after the catalog, so every copy starts out free.
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (copies < 1) copies = 1;
+        initHoldings();
+    }
+
+    @Override
+    public String toString() {
+        String holdings = copies == 1 ? (isAvailable() ? "Available" : "Borrowed")
+            : getAvailableCopies() + " of " + copies + " copies available";
+        return String.format("id=%s, title=%s, author=%s, category=%s - %s",
+            id, title, author, category, holdings);
+    }
+}
+
+class Catalog implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // Persisted as the original ArrayList so existing data files still load; the maps are rebuilt on read.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("books", ArrayList.class)
+    };
+    private transient LinkedHashMap<String, Book> books;
+    // The same books split by whether any copy is free, plus those with any copy out, ordered by
+    // ID for paging. Circulation changes holdings from many threads, so these are concurrent maps.
+    private transient ConcurrentSkipListMap<String, Book> available;
+    private transient ConcurrentSkipListMap<String, Book> unavailable;
+    private transient ConcurrentSkipListMap<String, Book> onLoan;
+    // folded category -> ID -> book, so category listings walk buckets in order without sorting.
+    private transient TreeMap<String, TreeMap<String, Book>> byCategory;
+    private transient HashMap<String, LinkedHashSet<Book>> byTitle;
+    private transient HashMap<String, LinkedHashSet<Book>> byAuthor;
+    private transient BookSearchIndex text;
+    // Mapped mode: books stay on disk until touched. Store IDs that were faulted in or removed are
+    // "detached" and from then on served (or hidden) by the in-memory maps.
+    private transient MappedBookStore store;
+    private transient HashSet<String> detached;
+    // Lookups, searches and listings share the read lock; adding, removing, updating and faulting
+    // store records in take the write lock. Never ask for the write lock while holding the read lock.
+    // Circulation moves books between the concurrent availability maps while holding a book stripe
+    // and takes neither lock, so a borrow never queues behind a writer waiting out a long search;
+    // those moves are serialized per book on the book's monitor instead (see partition()).
+    private transient ReentrantReadWriteLock lock;
+
+    public Catalog() { init(); }
+
+    void attach(MappedBookStore store) {
+        this.store = store;
+        this.detached = new HashSet<>();
+    }
+
+    private void init() {
+        lock = new ReentrantReadWriteLock();
+        books = new LinkedHashMap<>();
+        available = new ConcurrentSkipListMap<>();
+        unavailable = new ConcurrentSkipListMap<>();
+        onLoan = new ConcurrentSkipListMap<>();
+        byCategory = new TreeMap<>();
+        byTitle = new HashMap<>();
+        byAuthor = new HashMap<>();
+        text = new BookSearchIndex();
+    }
+
+    public void addBook(Book book) {
+        lock.writeLock().lock();
+        try {
+            if (store != null && !detached.contains(book.getId()) && store.indexOf(book.getId()) >= 0) {
+                detached.add(book.getId());
+            }
+            Book previous = books.put(book.getId(), book);
+            if (previous != null) {
+                previous.setCatalog(null);
+                unindex(previous);
+            }
+            book.setCatalog(this);
+            index(book);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean removeBook(String id) {
+        lock.writeLock().lock();
+        try {
+            if (searchBook(id) == null) return false;
+            Book book = books.remove(id);
+            book.setCatalog(null);
+            unindex(book);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Only a store record that is not yet in memory needs the write lock.
+    public Book searchBook(String id) {
+        lock.readLock().lock();
+        try {
+            Book book = books.get(id);
+            if (book != null || store == null || detached.contains(id) || store.indexOf(id) < 0) return book;
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            Book book = books.get(id);
+            if (book == null && !detached.contains(id)) book = materialize(store.indexOf(id));
+            return book;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Book> searchByCategory(String category) {
+        fault(MappedBookStore.CATEGORY, category);
+        lock.readLock().lock();
+        try {
+            TreeMap<String, Book> bucket = byCategory.get(fold(category));
+            return bucket == null ? Collections.emptyList() : new ArrayList<>(bucket.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Book> searchByTitle(String title) {
+        fault(MappedBookStore.TITLE, title);
+        return lookup(byTitle, title);
+    }
+
+    public List<Book> searchByAuthor(String author) {
+        fault(MappedBookStore.AUTHOR, author);
+        return lookup(byAuthor, author);
+    }
+
+    // Ranked full-text search; an exact ID match always comes first. In mapped mode only books
+    // already in memory are in the text index, so exact field matches are faulted in first.
+    public List<Book> search(String query, int limit) {
+        ArrayList<Book> results = new ArrayList<>();
+        Book exact = searchBook(query.trim());
+        if (exact != null) results.add(exact);
+        fault(MappedBookStore.TITLE, query);
+        fault(MappedBookStore.AUTHOR, query);
+        fault(MappedBookStore.CATEGORY, query);
+        List<Book> ranked;
+        lock.readLock().lock();
+        try {
+            ranked = text.search(query, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Book book : ranked) {
+            if (results.size() >= limit) break;
+            if (book != exact) results.add(book);
+        }
+        return results;
+    }
+
+    // A copy, so callers can iterate while the catalog changes.
+    public Collection<Book> getAllBooks() {
+        if (store != null) {
+            lock.writeLock().lock();
+            try {
+                for (int r = 0; r < store.size() && detached.size() < store.size(); r++) {
+                    if (!detached.contains(store.idAt(r))) materialize(r);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(books.values()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return books.size() + (store == null ? 0 : store.size() - detached.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Visits every book without faulting store records into the catalog; used when writing
+    // snapshots. Changes wait until the visit ends, so the action must not change the catalog.
+    void forEachBook(Consumer<Book> action) {
+        lock.readLock().lock();
+        try {
+            books.values().forEach(action);
+            if (store == null) return;
+            for (int r = 0; r < store.size(); r++) {
+                if (!detached.contains(store.idAt(r))) action.accept(store.bookAt(r));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Books in ID order after the cursor (exclusive). In mapped mode, store records are read for
+    // the page but not faulted into the catalog.
+    public Page<Book> page(String after, int limit) {
+        return locked(() -> {
+            Iterator<Book> memory = merge(tail(available, after), tail(unavailable, after), BY_ID);
+            return Page.of(merge(memory, stored(MappedBookStore.ID, store == null ? 0 : store.after(after)), BY_ID),
+                limit, Book::getId);
+        });
+    }
+
+    public Page<Book> pageAvailable(String after, int limit) {
+        return locked(() -> {
+            Iterator<Book> stored = filtered(stored(MappedBookStore.ID, store == null ? 0 : store.after(after)), Book::isAvailable);
+            return Page.of(merge(tail(available, after), stored, BY_ID), limit, Book::getId);
+        });
+    }
+
+    private <T> T locked(Supplier<T> read) {
+        lock.readLock().lock();
+        try {
+            return read.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Books with at least one copy out. Every such book is in memory: loading a loan faults its
+    // book in, and so does borrowing.
+    public Page<Book> pageBorrowed(String after, int limit) {
+        return Page.of(tail(onLoan, after), limit, Book::getId);
+    }
+
+    private static Iterator<Book> tail(NavigableMap<String, Book> map, String after) {
+        return (after == null ? map : map.tailMap(after, false)).values().iterator();
+    }
+
+    // Books ordered by case-folded category, then ID. The cursor is "<folded category>\0<id>".
+    public Page<Book> pageByCategory(String after, int limit) {
+        return locked(() -> categoryPage(after, limit));
+    }
+
+    private Page<Book> categoryPage(String after, int limit) {
+        String afterCategory = after == null ? "" : after.substring(0, after.indexOf('\0'));
+        String afterId = after == null ? null : after.substring(after.indexOf('\0') + 1);
+        Predicate<Book> pastCursor = b -> after == null || !fold(b.getCategory()).equals(afterCategory)
+            || b.getId().compareTo(afterId) > 0;
+        Iterator<Map.Entry<String, TreeMap<String, Book>>> buckets = byCategory.tailMap(afterCategory, true).entrySet().iterator();
+        Iterator<Book> memory = new Iterator<Book>() {
+            Iterator<Book> current = Collections.emptyIterator();
+            boolean first = true;
+            public boolean hasNext() {
+                while (!current.hasNext() && buckets.hasNext()) {
+                    Map.Entry<String, TreeMap<String, Book>> bucket = buckets.next();
+                    boolean resume = first && afterId != null && bucket.getKey().equals(afterCategory);
+                    current = (resume ? bucket.getValue().tailMap(afterId, false) : bucket.getValue()).values().iterator();
+                    first = false;
+                }
+                return current.hasNext();
+            }
+            public Book next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+        int start = store == null ? 0 : store.lowerBound(MappedBookStore.CATEGORY, afterCategory);
+        Iterator<Book> stored = filtered(stored(MappedBookStore.CATEGORY, start), pastCursor);
+        return Page.of(merge(memory, stored, BY_CATEGORY), limit, b -> fold(b.getCategory()) + '\0' + b.getId());
+    }
+
+    static final Comparator<Book> BY_ID = Comparator.comparing(Book::getId);
+    static final Comparator<Book> BY_CATEGORY =
+        Comparator.<Book, String>comparing(b -> fold(b.getCategory())).thenComparing(Book::getId);
+
+    // Store records in `field` order from position `start`, skipping those held in memory or removed.
+    private Iterator<Book> stored(int field, int start) {
+        if (store == null) return Collections.emptyIterator();
+        return filtered(new Iterator<Book>() {
+            int position = start;
+            public boolean hasNext() { return position < store.size(); }
+            public Book next() {
+                int record = store.recordAt(field, position++);
+                return detached.contains(store.idAt(record)) ? null : store.bookAt(record);
+            }
+        }, Objects::nonNull);
+    }
+
+    private static Iterator<Book> merge(Iterator<Book> a, Iterator<Book> b, Comparator<Book> order) {
+        return new Iterator<Book>() {
+            Book nextA = a.hasNext() ? a.next() : null;
+            Book nextB = b.hasNext() ? b.next() : null;
+            public boolean hasNext() { return nextA != null || nextB != null; }
+            public Book next() {
+                if (nextA == null && nextB == null) throw new NoSuchElementException();
+                Book out;
+                if (nextB == null || (nextA != null && order.compare(nextA, nextB) <= 0)) {
+                    out = nextA;
+                    nextA = a.hasNext() ? a.next() : null;
+                } else {
+                    out = nextB;
+                    nextB = b.hasNext() ? b.next() : null;
+                }
+                return out;
+            }
+        };
+    }
+
+    private static Iterator<Book> filtered(Iterator<Book> source, Predicate<Book> filter) {
+        return new Iterator<Book>() {
+            Book next = advance();
+            private Book advance() {
+                while (source.hasNext()) {
+                    Book b = source.next();
+                    if (filter.test(b)) return b;
+                }
+                return null;
+            }
+            public boolean hasNext() { return next != null; }
+            public Book next() {
+                if (next == null) throw new NoSuchElementException();
+                Book out = next;
+                next = advance();
+                return out;
+            }
+        };
+    }
+
+    private Book materialize(int record) {
+        Book book = store.bookAt(record);
+        detached.add(book.getId());
+        books.put(book.getId(), book);
+        book.setCatalog(this);
+        index(book);
+        return book;
+    }
+
+    private void fault(int field, String value) {
+        if (store == null) return;
+        lock.writeLock().lock();
+        try {
+            for (int record : store.find(field, fold(value))) {
+                if (!detached.contains(store.idAt(record))) materialize(record);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void updateBook(String id, String title, String author, String category) {
+        lock.writeLock().lock();
+        try {
+            Book book = searchBook(id);
+            if(book != null) book.updateDetails(title, author, category);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void index(Book book) {
+        byCategory.computeIfAbsent(fold(book.getCategory()), k -> new TreeMap<>()).put(book.getId(), book);
+        partition(book);
+        bucket(byTitle, book.getTitle()).add(book);
+        bucket(byAuthor, book.getAuthor()).add(book);
+        text.add(book);
+    }
+
+    void unindex(Book book) {
+        String category = fold(book.getCategory());
+        TreeMap<String, Book> bucket = byCategory.get(category);
+        if (bucket != null && bucket.remove(book.getId(), book) && bucket.isEmpty()) byCategory.remove(category);
+        partition(book);
+        drop(byTitle, book.getTitle(), book);
+        drop(byAuthor, book.getAuthor(), book);
+        text.remove(book);
+    }
+
+    void availabilityChanged(Book book) { partition(book); }
+
+    // Files a book under the availability maps matching its holdings now, or under none once it has
+    // left this catalog. Removal clears the book's catalog before unindexing it, so a circulation
+    // update racing with the removal either sees that or is undone by it.
+    private void partition(Book book) {
+        synchronized (book) {
+            boolean listed = book.getCatalog() == this;
+            if (listed && book.isAvailable()) available.put(book.getId(), book);
+            else available.remove(book.getId(), book);
+            if (listed && !book.isAvailable()) unavailable.put(book.getId(), book);
+            else unavailable.remove(book.getId(), book);
+            if (listed && book.isOnLoan()) onLoan.put(book.getId(), book);
+            else onLoan.remove(book.getId(), book);
+        }
+    }
+
+    static String fold(String value) { return value.toLowerCase(Locale.ROOT); }
+
+    private static LinkedHashSet<Book> bucket(HashMap<String, LinkedHashSet<Book>> index, String value) {
+        return index.computeIfAbsent(fold(value), k -> new LinkedHashSet<>());
+    }
+
+    private static void drop(HashMap<String, LinkedHashSet<Book>> index, String value, Book book) {
+        String key = fold(value);
+        LinkedHashSet<Book> set = index.get(key);
+        if (set != null && set.remove(book) && set.isEmpty()) index.remove(key);
+    }
+
+    private List<Book> lookup(HashMap<String, LinkedHashSet<Book>> index, String value) {
+        return locked(() -> {
+            LinkedHashSet<Book> set = index.get(fold(value));
+            return set == null ? Collections.<Book>emptyList() : new ArrayList<>(set);
+        });
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.putFields().put("books", new ArrayList<>(getAllBooks()));
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ArrayList<Book> stored = (ArrayList<Book>) in.readFields().get("books", null);
+        init();
+        if (stored != null) stored.forEach(this::addBook);
+    }
+}
+
+// An immutable notice: when it was sent, which message template, and the template's arguments.
+// The text is only built when it is displayed, and one instance may be shared by many recipients.
+final class Notification {
+    // Persisted by ordinal: append new templates, never reorder.
+    enum Template {
+        MESSAGE("%s"),
+        BORROWED("Borrowed book: %s"),
+        DUE_REMINDER("Reminder: \"%s\" (%s) is due on %s"),
+        OVERDUE("Overdue: \"%s\" (%s) was due on %s. Please return it."),
+        BROADCAST("Notice from %s: %s"),
+        HOLD_READY("Hold ready: \"%s\" (%s) is held for you until %s");
+
+        final String format;
+        // Matches text produced by this template, for recovering templates from legacy strings.
+        final Pattern legacy;
+
+        Template(String format) {
+            this.format = format;
+            StringBuilder regex = new StringBuilder();
+            for (String literal : format.split("%s", -1)) {
+                if (regex.length() > 0) regex.append("(.*)");
+                regex.append(Pattern.quote(literal));
+            }
+            this.legacy = Pattern.compile(regex.toString());
+        }
+    }
+
+    private static final DateTimeFormatter TIME =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    final long time;
+    final Template template;
+    final String[] args;
+
+    Notification(long time, Template template, String... args) {
+        this.time = time;
+        this.template = template;
+        this.args = args;
+    }
+
+    public String getMessage() { return String.format(template.format, (Object[]) args); }
+
+    boolean matches(Template template, String... args) {
+        return this.template == template && Arrays.equals(this.args, args);
+    }
+
+    boolean sameAs(Notification other) {
+        return time == other.time && matches(other.template, other.args);
+    }
+
+    @Override
+    public String toString() {
+        return TIME.format(Instant.ofEpochMilli(time)) + " - " + getMessage();
+    }
+
+    // Data files before the notification store kept "yyyy-MM-dd HH:mm - message" strings.
+    static Notification parseLegacy(String text) {
+        long time = 0;
+        String message = text;
+        int sep = text.indexOf(" - ");
+        if (sep > 0) {
+            try {
+                time = new SimpleDateFormat("yyyy-MM-dd HH:mm").parse(text.substring(0, sep)).getTime();
+                message = text.substring(sep + 3);
+            } catch (ParseException e) {
+                // not a timestamp; keep the whole text
+            }
+        }
+        for (Template template : Template.values()) {
+            if (template == Template.MESSAGE) continue;
+            Matcher m = template.legacy.matcher(message);
+            if (m.matches()) {
+                String[] args = new String[m.groupCount()];
+                for (int i = 0; i < args.length; i++) args[i] = m.group(i + 1);
+                return new Notification(time, template, args);
+            }
+        }
+        return new Notification(time, Template.MESSAGE, message);
+    }
+}
+
+// Per-user ring of the most recent notifications. Entries beyond MAX_ENTRIES or older than
+// MAX_AGE_MS are dropped as new ones arrive; each slot is flagged until the entry is viewed.
+class NotificationStore {
+    static final int MAX_ENTRIES = 100;
+    static final long MAX_AGE_MS = 180L * 24 * 60 * 60 * 1000;
+
+    private final Notification[] ring = new Notification[MAX_ENTRIES];
+    private final boolean[] unseen = new boolean[MAX_ENTRIES];
+    private int head;
+    private int size;
+    private int unread;
+
+    // One page of entries and which of them had not been viewed before.
+    static final class View {
+        final List<Notification> entries;
+        final boolean[] unread;
+
+        View(List<Notification> entries, boolean[] unread) {
+            this.entries = entries;
+            this.unread = unread;
+        }
+    }
+
+    public synchronized void add(Notification n) {
+        expire(n.time - MAX_AGE_MS);
+        if (size == MAX_ENTRIES) dropOldest();
+        int slot = (head + size) % MAX_ENTRIES;
+        ring[slot] = n;
+        unseen[slot] = true;
+        size++;
+        unread++;
+    }
+
+    private void dropOldest() {
+        if (unseen[head]) unread--;
+        ring[head] = null;
+        unseen[head] = false;
+        head = (head + 1) % MAX_ENTRIES;
+        size--;
+    }
+
+    private void expire(long cutoff) {
+        while (size > 0 && ring[head].time < cutoff) dropOldest();
+    }
+
+    // Ring slot of the i-th newest entry.
+    private int slot(int i) { return (head + size - 1 - i) % MAX_ENTRIES; }
+
+    public synchronized int size() { return size; }
+
+    public synchronized int unreadCount() { return unread; }
+
+    public synchronized void markRead() { setUnread(0); }
+
+    // Snapshots keep only the count, so on load the newest `count` entries are the unread ones.
+    synchronized void setUnread(int count) {
+        unread = Math.max(0, Math.min(count, size));
+        for (int i = 0; i < size; i++) unseen[slot(i)] = i < unread;
+    }
+
+    // Newest first: entry 0 is the most recent notification.
+    public synchronized List<Notification> page(int offset, int limit) {
+        int end = Math.min(size, offset + limit);
+        List<Notification> page = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) page.add(ring[slot(i)]);
+        return page;
+    }
+
+    // Like page(), and marks read exactly the entries returned, in the same step, so entries that
+    // were not shown stay new and two viewers of one account cannot both treat one as new.
+    public synchronized View read(int offset, int limit) {
+        List<Notification> entries = page(offset, limit);
+        boolean[] wasUnread = new boolean[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            int slot = slot(offset + i);
+            if (!unseen[slot]) continue;
+            wasUnread[i] = true;
+            unseen[slot] = false;
+            unread--;
+        }
+        return new View(entries, wasUnread);
+    }
+
+    // Adds n unless an identical entry is already present, so replaying a journal record is harmless.
+    public synchronized boolean addIfAbsent(Notification n) {
+        for (int i = 0; i < size; i++) {
+            if (ring[(head + i) % MAX_ENTRIES].sameAs(n)) return false;
+        }
+        add(n);
+        return true;
+    }
+
+    public synchronized boolean contains(Notification.Template template, String... args) {
+        for (int i = 0; i < size; i++) {
+            if (ring[(head + i) % MAX_ENTRIES].matches(template, args)) return true;
+        }
+        return false;
+    }
+}
+
+abstract class User implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // Persisted with the original List<String> notifications so existing data files still load.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("campus", String.class),
+        new ObjectStreamField("notifications", ArrayList.class)
+    };
+    protected String id;
+    protected String name;
+    protected String campus;
+    protected transient NotificationStore notifications = new NotificationStore();
+
+    public User(String id, String name, String campus) {
+        this.id = id;
+        this.name = name;
+        this.campus = campus;
+    }
+
+    public void addNotification(String message) {
+        notify(Notification.Template.MESSAGE, message);
+    }
+
+    public void notify(Notification.Template template, String... args) {
+        notifications.add(new Notification(System.currentTimeMillis(), template, args));
+    }
+
+    public NotificationStore getNotifications() { return notifications; }
+
+    public boolean hasNotification(Notification.Template template, String... args) {
+        return notifications.contains(template, args);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ArrayList<String> stored = new ArrayList<>();
+        List<Notification> all = notifications.page(0, NotificationStore.MAX_ENTRIES);
+        for (int i = all.size() - 1; i >= 0; i--) stored.add(all.get(i).toString());
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("name", name);
+        fields.put("campus", campus);
+        fields.put("notifications", stored);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        id = (String) fields.get("id", null);
+        name = (String) fields.get("name", null);
+        campus = (String) fields.get("campus", null);
+        notifications = new NotificationStore();
+        ArrayList<String> stored = (ArrayList<String>) fields.get("notifications", null);
+        if (stored != null) stored.forEach(n -> notifications.add(Notification.parseLegacy(n)));
+    }
+}
+
+class Student extends User {
+    private static final long serialVersionUID = 1L;
+    // Loans live in the campus LoanTable; the serialized form still carries them here.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("borrowedBooks", HashMap.class)
+    };
+    transient HashMap<Book, Date[]> legacyLoans;
+
+    public Student(String id, String name, String campus) {
+        super(id, name, campus);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.putFields().put("borrowedBooks", legacyLoans == null ? new HashMap<>() : legacyLoans);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        legacyLoans = (HashMap<Book, Date[]>) in.readFields().get("borrowedBooks", null);
+    }
+}
+
+class Officer extends User {
+    private static final long serialVersionUID = 1L;
+    public Officer(String id, String name, String campus) {
+        super(id, name, campus);
+    }
+
+    public void sendNotification(Student student, String message) {
+        student.addNotification(message);
+    }
+}
+
+class CirculationService {
+    static final int MAX_LOANS = 5;
+    static final int MAX_HOLDS = 5;
+    static final long HOLD_PICKUP_MS = 3L * 24 * 60 * 60 * 1000;
+
+    enum Result {
+        BORROWED, RETURNED, NOT_FOUND, NOT_AVAILABLE, LIMIT_REACHED, NOT_BORROWED, ALREADY_BORROWED,
+        HELD, ALREADY_HELD, AVAILABLE, NOT_HELD, CANCELLED
+    }
+
+    interface Listener {
+        void borrowed(Student student, Book book, Loan loan);
+        void returned(Student student, Book book, Loan loan, long returnedAt);
+        default void holdPlaced(Hold hold, Book book) {}
+        default void holdCancelled(Hold hold, Book book, long at) {}
+        default void holdExpired(Hold hold, Book book, long at) {}
+        // A copy has been set aside for the hold until hold.expiresAt.
+        default void holdReady(Hold hold, Book book) {}
+    }
+
+    private final ReentrantLock[] stripes;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public CirculationService(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1) << 1);
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) stripes[i] = new ReentrantLock();
+    }
+
+    public void addListener(Listener listener) { listeners.add(listener); }
+
+    public Result borrow(LoanTable loans, HoldTable holds, Student student, Book book, long borrowedAt, long dueAt) {
+        return borrow(loans, holds, student, book, 0, borrowedAt, dueAt);
+    }
+
+    // Lock order is always student monitor, then book stripe, so borrow and return cannot deadlock.
+    // The student monitor guards the loan and hold limits; the stripe guards the book's copies and
+    // its hold queue. A copy set aside for the student's hold is theirs; otherwise copy 0 takes
+    // any free copy, and replay passes the copy the journal recorded.
+    public Result borrow(LoanTable loans, HoldTable holds, Student student, Book book, int copy, long borrowedAt, long dueAt) {
+        if (student == null || book == null) return Result.NOT_FOUND;
+        synchronized (student) {
+            if (loans.count(student.id) >= MAX_LOANS) return Result.LIMIT_REACHED;
+            if (loans.find(student.id, book.getId()) != null) return Result.ALREADY_BORROWED;
+            ReentrantLock lock = stripeFor(book.getId());
+            lock.lock();
+            try {
+                Hold hold = holds.find(student.id, book.getId());
+                boolean setAside = hold != null && hold.isReady();
+                int taken = setAside ? hold.copy : copy == 0 ? book.checkOut() : book.checkOut(copy) ? copy : 0;
+                if (taken == 0) return Result.NOT_AVAILABLE;
+                Loan loan = new Loan(book.getId(), student.id, taken, borrowedAt, dueAt);
+                if (!loans.add(loan)) {
+                    if (!setAside) book.checkIn(taken);
+                    return Result.NOT_AVAILABLE;
+                }
+                if (hold != null) holds.remove(hold);
+                student.notify(Notification.Template.BORROWED, book.getTitle());
+                for (Listener l : listeners) l.borrowed(student, book, loan);
+                return Result.BORROWED;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // The returned copy goes straight to the next hold on the book, if there is one.
+    public Result returnBook(LoanTable loans, HoldTable holds, Student student, Book book, long returnedAt) {
+        if (student == null || book == null) return Result.NOT_FOUND;
+        synchronized (student) {
+            ReentrantLock lock = stripeFor(book.getId());
+            lock.lock();
+            try {
+                Loan loan = loans.find(student.id, book.getId());
+                if (loan == null) return Result.NOT_BORROWED;
+                loans.remove(loan);
+                release(holds, book, loan.copy, returnedAt);
+                for (Listener l : listeners) l.returned(student, book, loan, returnedAt);
+                return Result.RETURNED;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Queues the student for the next copy of a book that has none free.
+    public Result placeHold(LoanTable loans, HoldTable holds, Student student, Book book, long placedAt) {
+        if (student == null || book == null) return Result.NOT_FOUND;
+        synchronized (student) {
+            if (loans.find(student.id, book.getId()) != null) return Result.ALREADY_BORROWED;
+            if (holds.find(student.id, book.getId()) != null) return Result.ALREADY_HELD;
+            if (holds.count(student.id) >= MAX_HOLDS) return Result.LIMIT_REACHED;
+            ReentrantLock lock = stripeFor(book.getId());
+            lock.lock();
+            try {
+                if (book.isAvailable()) return Result.AVAILABLE;
+                Hold hold = new Hold(book.getId(), student.id, placedAt);
+                holds.place(hold);
+                for (Listener l : listeners) l.holdPlaced(hold, book);
+                return Result.HELD;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Drops the student's hold; a copy set aside for it passes to the next hold.
+    public Result cancelHold(HoldTable holds, Student student, Book book, long at) {
+        if (student == null || book == null) return Result.NOT_FOUND;
+        synchronized (student) {
+            ReentrantLock lock = stripeFor(book.getId());
+            lock.lock();
+            try {
+                Hold hold = holds.find(student.id, book.getId());
+                if (hold == null || !holds.remove(hold)) return Result.NOT_HELD;
+                for (Listener l : listeners) l.holdCancelled(hold, book, at);
+                if (hold.isReady()) release(holds, book, hold.copy, at);
+                return Result.CANCELLED;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Ends a hold whose pickup deadline has passed; false if it was picked up or cancelled first.
+    public boolean expireHold(HoldTable holds, Book book, Hold hold, long now) {
+        ReentrantLock lock = stripeFor(book.getId());
+        lock.lock();
+        try {
+            if (!hold.isReady() || hold.expiresAt > now || !holds.remove(hold)) return false;
+            for (Listener l : listeners) l.holdExpired(hold, book, now);
+            release(holds, book, hold.copy, now);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Changes how many copies a title holds; false if that would withdraw a copy that is out.
+    // Added copies go to waiting holds first.
+    public boolean setCopies(HoldTable holds, Book book, int copies, long now) {
+        ReentrantLock lock = stripeFor(book.getId());
+        lock.lock();
+        try {
+            int before = book.getCopies();
+            if (!book.setCopies(copies)) return false;
+            for (int copy = before + 1; copy <= copies && holds.hasWaiting(book.getId()); copy++) {
+                if (book.checkOut(copy)) release(holds, book, copy, now);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Hands a copy that is still checked out to the next waiting hold, or back to the shelf.
+    // The caller holds the book's stripe.
+    private void release(HoldTable holds, Book book, int copy, long now) {
+        Hold next = holds.next(book.getId());
+        if (next == null) {
+            book.checkIn(copy);
+            return;
+        }
+        holds.ready(next, copy, now + HOLD_PICKUP_MS);
+        for (Listener l : listeners) l.holdReady(next, book);
+    }
+
+    private ReentrantLock stripeFor(String bookId) {
+        int h = bookId.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+}
+
+class BookSearchIndex {
+    private static final int TITLE_WEIGHT = 3;
+    private static final int AUTHOR_WEIGHT = 2;
+    private static final int CATEGORY_WEIGHT = 1;
+    private static final int MAX_PREFIX_TERMS = 256;
+
+    // term -> (book -> summed field weight). Sorted so a prefix is a contiguous range of terms.
+    private final TreeMap<String, HashMap<Book, Integer>> postings = new TreeMap<>();
+
+    public void add(Book book) {
+        forEachTerm(book, (term, weight) ->
+            postings.computeIfAbsent(term, k -> new HashMap<>()).merge(book, weight, Integer::sum));
+    }
+
+    public void remove(Book book) {
+        forEachTerm(book, (term, weight) -> {
+            HashMap<Book, Integer> books = postings.get(term);
+            if (books != null && books.remove(book) != null && books.isEmpty()) postings.remove(term);
+        });
+    }
+
+    // Every query token must match a whole term or a term prefix; whole-term hits score double.
+    // Candidates come from the token with the fewest postings and are probed against the rest.
+    public List<Book> search(String query, int limit) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) return Collections.emptyList();
+        List<TokenMatch> matches = new ArrayList<>();
+        for (String token : tokens) matches.add(new TokenMatch(token));
+        matches.sort(Comparator.comparingLong(m -> m.size));
+
+        TokenMatch driver = matches.get(0);
+        List<TokenMatch> others = matches.subList(1, matches.size());
+        PriorityQueue<Map.Entry<Book, Integer>> top = new PriorityQueue<>(RANK);
+        if (driver.prefixes.isEmpty()) {
+            if (driver.exact != null) driver.exact.forEach((book, weight) -> offer(top, limit, book, weight * 2, others));
+        } else {
+            HashSet<Book> seen = new HashSet<>();
+            if (driver.exact != null) driver.exact.keySet().forEach(seen::add);
+            for (HashMap<Book, Integer> books : driver.prefixes) books.keySet().forEach(seen::add);
+            for (Book book : seen) offer(top, limit, book, driver.scoreOf(book), others);
+        }
+
+        ArrayList<Book> results = new ArrayList<>(top.size());
+        while (!top.isEmpty()) results.add(top.poll().getKey());
+        Collections.reverse(results);
+        return results;
+    }
+
+    private static final Comparator<Map.Entry<Book, Integer>> RANK = Map.Entry.<Book, Integer>comparingByValue()
+        .thenComparing(e -> e.getKey().getTitle(), Comparator.reverseOrder())
+        .thenComparing(e -> e.getKey().getId(), Comparator.reverseOrder());
+
+    private static void offer(PriorityQueue<Map.Entry<Book, Integer>> top, int limit, Book book, int score,
+            List<TokenMatch> others) {
+        for (TokenMatch other : others) {
+            int s = other.scoreOf(book);
+            if (s == 0) return;
+            score += s;
+        }
+        if (top.size() >= limit && score < top.peek().getValue()) return;
+        Map.Entry<Book, Integer> entry = new AbstractMap.SimpleImmutableEntry<>(book, score);
+        if (top.size() < limit) {
+            top.add(entry);
+        } else if (RANK.compare(entry, top.peek()) > 0) {
+            top.poll();
+            top.add(entry);
+        }
+    }
+
+    private class TokenMatch {
+        final HashMap<Book, Integer> exact;
+        final List<HashMap<Book, Integer>> prefixes = new ArrayList<>();
+        long size;
+
+        TokenMatch(String token) {
+            exact = postings.get(token);
+            if (exact != null) size = exact.size();
+            for (HashMap<Book, Integer> books : postings.subMap(token, false, token + Character.MAX_VALUE, false).values()) {
+                if (prefixes.size() >= MAX_PREFIX_TERMS) break;
+                prefixes.add(books);
+                size += books.size();
+            }
+        }
+
+        int scoreOf(Book book) {
+            Integer weight = exact == null ? null : exact.get(book);
+            int best = weight == null ? 0 : weight * 2;
+            for (HashMap<Book, Integer> books : prefixes) {
+                weight = books.get(book);
+                if (weight != null) best = Math.max(best, weight);
+            }
+            return best;
+        }
+    }
+
+    private static void forEachTerm(Book book, ObjIntConsumer<String> action) {
+        for (String t : tokenize(book.getTitle())) action.accept(t, TITLE_WEIGHT);
+        for (String t : tokenize(book.getAuthor())) action.accept(t, AUTHOR_WEIGHT);
+        for (String t : tokenize(book.getCategory())) action.accept(t, CATEGORY_WEIGHT);
+    }
+
+    static List<String> tokenize(String text) {
+        ArrayList<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(Catalog.fold(text.substring(start, i)));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
+
+class MappedBookStore {
+    static final int MAGIC = 0x4C4D4232; // "LMB2"
+    static final int MAGIC_V1 = 0x4C4D4231; // "LMB1", single-copy records
+    static final int ID = 0;
+    static final int TITLE = 1;
+    static final int AUTHOR = 2;
+    static final int CATEGORY = 3;
+    private static final int FIELDS = 5;
+
+    // Layout: MAGIC, count, tablesOffset, records sorted by ID, then four int tables of `count`
+    // entries: record offsets (ID order) and record numbers ordered by folded title, author
+    // and category. Each record is five length-prefixed UTF-8 strings (id, title, author,
+    // category, campus) and an int copy count (an availability byte in LMB1 files). Books with a
+    // copy out are always held in memory, so stored records have every copy free.
+    private final ByteBuffer map;
+    private final boolean singleCopy;
+    private final int count;
+    private final int tables;
+
+    private MappedBookStore(ByteBuffer map) throws IOException {
+        int magic = map.capacity() < 12 ? 0 : map.getInt(0);
+        if (magic != MAGIC && magic != MAGIC_V1) throw new IOException("Not a library book file");
+        this.map = map;
+        this.singleCopy = magic == MAGIC_V1;
+        this.count = map.getInt(4);
+        this.tables = map.getInt(8);
+    }
+
+    public static MappedBookStore open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Book file too large to map: " + file);
+            return new MappedBookStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Checks the whole file against the CRC32 its snapshot recorded before any offset in it is trusted.
+    public static MappedBookStore open(File file, int checksum) throws IOException {
+        MappedBookStore store = open(file);
+        if (checksum(store.map) != checksum) throw new IOException("Book file checksum mismatch: " + file);
+        return store;
+    }
+
+    private static int checksum(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate().clear());
+        return (int) crc.getValue();
+    }
+
+    public int size() { return count; }
+
+    public String idAt(int record) { return field(record, ID); }
+
+    public Book bookAt(int record) {
+        String[] f = new String[FIELDS];
+        int p = map.getInt(tables + 4 * record);
+        for (int i = 0; i < FIELDS; i++) {
+            f[i] = string(p);
+            p += 4 + map.getInt(p);
+        }
+        return new Book(f[0], f[1], f[2], f[3], f[4], singleCopy ? 1 : map.getInt(p));
+    }
+
+    public int indexOf(String id) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = idAt(mid).compareTo(id);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // First record whose ID sorts after `id`; a null id means the first record.
+    public int after(String id) {
+        if (id == null) return 0;
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (idAt(mid).compareTo(id) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // The record at `position` in `field` order; ID order is the record order itself.
+    public int recordAt(int field, int position) { return field == ID ? position : entry(field, position); }
+
+    // First position in the `field` table whose case-folded value is not below foldedValue.
+    public int lowerBound(int field, String foldedValue) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Catalog.fold(field(entry(field, mid), field)).compareTo(foldedValue) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Binary search on the table for `field`, which is ordered by the case-folded value.
+    public int[] find(int field, String foldedValue) {
+        int lo = lowerBound(field, foldedValue);
+        int end = lo;
+        while (end < count && Catalog.fold(field(entry(field, end), field)).equals(foldedValue)) end++;
+        int[] records = new int[end - lo];
+        for (int i = lo; i < end; i++) records[i - lo] = entry(field, i);
+        return records;
+    }
+
+    private int entry(int field, int i) { return map.getInt(tables + 4 * (field * count + i)); }
+
+    private String field(int record, int field) {
+        int p = map.getInt(tables + 4 * record);
+        for (int i = 0; i < field; i++) p += 4 + map.getInt(p);
+        return string(p);
+    }
+
+    private String string(int p) {
+        byte[] bytes = new byte[map.getInt(p)];
+        ByteBuffer view = map.duplicate();
+        view.position(p + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Returns the CRC32 of the finished file.
+    public static int write(File file, List<Book> books) throws IOException {
+        books.sort(Comparator.comparing(Book::getId));
+        int n = books.size();
+        int[] offsets = new int[n];
+        int tables;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(n);
+            out.writeInt(0);
+            for (int i = 0; i < n; i++) {
+                Book b = books.get(i);
+                offsets[i] = out.size();
+                writeString(out, b.getId());
+                writeString(out, b.getTitle());
+                writeString(out, b.getAuthor());
+                writeString(out, b.getCategory());
+                writeString(out, b.getCampus());
+                out.writeInt(b.getCopies());
+            }
+            tables = out.size();
+            if (tables == Integer.MAX_VALUE) throw new IOException("Too many books to map in one file");
+            for (int offset : offsets) out.writeInt(offset);
+            writeOrder(out, books, Book::getTitle);
+            writeOrder(out, books, Book::getAuthor);
+            writeOrder(out, books, Book::getCategory);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(8);
+            raf.writeInt(tables);
+            raf.getFD().sync();
+            if (raf.length() > Integer.MAX_VALUE) throw new IOException("Too many books to map in one file");
+            return checksum(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        }
+    }
+
+    private static void writeOrder(DataOutputStream out, List<Book> books, Function<Book, String> field)
+            throws IOException {
+        String[] keys = new String[books.size()];
+        Integer[] order = new Integer[books.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Catalog.fold(field.apply(books.get(i)));
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+        for (int record : order) out.writeInt(record);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
+
+class SnapshotCodec {
+    static final int MAGIC = 0x4C4D5331; // "LMS1"
+    static final int VERSION = 12;
+    static final byte INLINE_BOOKS = 0;
+    static final byte MAPPED_BOOKS = 1;
+
+    // Layout: MAGIC, VERSION, then per campus a string-ref name, the book storage kind (v2+) and
+    // length-prefixed book, officer and student records. Mapped campuses store their books in a
+    // separate MappedBookStore file (bookFiles maps campus position to path) and only its path
+    // here. Repeated strings (campus, author, category) are dictionary-encoded: a ref equal to the
+    // current table size introduces a new string.
+    // Newer versions may append fields to a record; they must be raw values, never refs,
+    // so older readers can skip them without losing track of the dictionary.
+    // Since v6 the header and each campus's book, officer and student sections end with the CRC32
+    // of their bytes, so a damaged snapshot is rejected instead of half loaded. v7 appends a copy
+    // count to books and the copy number to loans; which copies are out follows from the loans.
+    // v8 adds a section of holds after the students: ready holds, then each book's queue in order.
+    // v9 adds a section of borrowing aggregates after the holds: one record per day with a
+    // rollup, then the top-titles sketch. v10 follows a book file's path with the CRC32 of the file.
+    // v11 ends the aggregates with the last event number they include. v12 writes their days and
+    // counts as variable-length longs; earlier versions truncated them to int.
+    private final HashMap<String, Integer> writeDict = new HashMap<>();
+    private final ArrayList<String> readDict = new ArrayList<>();
+    private final ByteArrayOutputStream recordBuf = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(recordBuf);
+    private final RecordInput recordIn = new RecordInput();
+    private final DataInputStream recordData = new DataInputStream(recordIn);
+
+    private static class RecordInput extends ByteArrayInputStream {
+        RecordInput() { super(new byte[256]); }
+
+        void fill(DataInputStream in, int length) throws IOException {
+            if (buf.length < length) buf = new byte[Math.max(length, buf.length * 2)];
+            in.readFully(buf, 0, length);
+            pos = 0;
+            count = length;
+        }
+    }
+
+    public static void write(DataOutputStream out, List<Campus> campuses, IntFunction<String> bookFiles) throws IOException {
+        new SnapshotCodec().writeAll(out, campuses, bookFiles);
+    }
+
+    public static ArrayList<Campus> read(DataInputStream in) throws IOException {
+        return new SnapshotCodec().readAll(in);
+    }
+
+    private void writeAll(DataOutputStream raw, List<Campus> campuses, IntFunction<String> bookFiles) throws IOException {
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        writeVarInt(out, campuses.size());
+        endSection(out, crc);
+        for (int c = 0; c < campuses.size(); c++) {
+            Campus campus = campuses.get(c);
+            writeRef(out, campus.getName());
+            if (bookFiles != null) {
+                String path = bookFiles.apply(c);
+                out.writeByte(MAPPED_BOOKS);
+                out.writeUTF(path);
+                out.writeInt(writeBookFile(campus.getCatalog(), path));
+            } else {
+                out.writeByte(INLINE_BOOKS);
+                writeBooks(out, campus.getCatalog().getAllBooks());
+            }
+            endSection(out, crc);
+            List<Officer> officers = campus.getOfficers().list();
+            writeVarInt(out, officers.size());
+            for (Officer o : officers) {
+                writeUser(o);
+                flushRecord(out);
+            }
+            endSection(out, crc);
+            List<Student> students = campus.getStudents().list();
+            writeVarInt(out, students.size());
+            for (Student st : students) {
+                writeUser(st);
+                List<Loan> loans = campus.getLoans().forStudent(st.id);
+                writeVarInt(record, loans.size());
+                for (Loan loan : loans) {
+                    record.writeUTF(loan.bookId);
+                    record.writeLong(loan.borrowedAt);
+                    record.writeLong(loan.dueAt);
+                    record.writeByte(loan.notices);
+                    writeVarInt(record, loan.copy);
+                }
+                flushRecord(out);
+            }
+            endSection(out, crc);
+            List<Hold> holds = campus.getHolds().list();
+            writeVarInt(out, holds.size());
+            for (Hold hold : holds) {
+                writeRef(record, hold.bookId);
+                record.writeUTF(hold.studentId);
+                record.writeLong(hold.placedAt);
+                writeVarInt(record, hold.copy);
+                if (hold.isReady()) record.writeLong(hold.expiresAt);
+                flushRecord(out);
+            }
+            endSection(out, crc);
+            writeLoanStats(out, campus.getLoanStats());
+            endSection(out, crc);
+        }
+        out.flush();
+    }
+
+    private void writeLoanStats(DataOutputStream out, LoanStats stats) throws IOException {
+        // Taken together so the event number matches the totals exactly.
+        List<LoanStats.Day> days;
+        List<TopK.Entry> titles;
+        long events;
+        synchronized (stats) {
+            days = stats.days();
+            titles = stats.topTitles(LoanStats.TOP_TITLES);
+            events = stats.getEvents();
+        }
+        writeVarInt(out, days.size());
+        for (LoanStats.Day day : days) {
+            writeVarLong(record, day.epochDay);
+            writeVarLong(record, day.borrows);
+            writeVarLong(record, day.returns);
+            writeVarLong(record, day.lateReturns);
+            record.writeLong(day.loanMillis);
+            writeVarInt(record, day.byCategory.size());
+            for (Map.Entry<String, Long> e : day.byCategory.entrySet()) {
+                writeRef(record, e.getKey());
+                writeVarLong(record, e.getValue());
+            }
+            flushRecord(out);
+        }
+        writeVarInt(out, titles.size());
+        for (TopK.Entry title : titles) {
+            record.writeUTF(title.key);
+            record.writeUTF(title.label);
+            writeVarLong(record, title.count);
+            writeVarLong(record, title.error);
+            flushRecord(out);
+        }
+        out.writeLong(events);
+    }
+
+    private void readLoanStats(DataInputStream in, LoanStats stats, int version) throws IOException {
+        int dayCount = readVarInt(in);
+        for (int i = 0; i < dayCount; i++) {
+            DataInputStream r = readRecord(in);
+            LoanStats.Day day = new LoanStats.Day(readCount(r, version));
+            day.borrows = readCount(r, version);
+            day.returns = readCount(r, version);
+            day.lateReturns = readCount(r, version);
+            day.loanMillis = r.readLong();
+            int categories = readVarInt(r);
+            for (int c = 0; c < categories; c++) day.byCategory.put(readRef(r), readCount(r, version));
+            stats.restore(day);
+        }
+        int titleCount = readVarInt(in);
+        for (int i = 0; i < titleCount; i++) {
+            DataInputStream r = readRecord(in);
+            stats.restore(new TopK.Entry(r.readUTF(), r.readUTF(), readCount(r, version), readCount(r, version)));
+        }
+        if (version >= 11) stats.restore(in.readLong());
+    }
+
+    private static long readCount(DataInputStream r, int version) throws IOException {
+        return version >= 12 ? readVarLong(r) : readVarInt(r);
+    }
+
+    private static void endSection(DataOutputStream out, CRC32 crc) throws IOException {
+        int sum = (int) crc.getValue();
+        out.writeInt(sum);
+        crc.reset();
+    }
+
+    private static void checkSection(DataInputStream in, CRC32 crc, int version) throws IOException {
+        if (version < 6) return;
+        int sum = (int) crc.getValue();
+        if (in.readInt() != sum) throw new IOException("Snapshot checksum mismatch");
+        crc.reset();
+    }
+
+    private void writeBooks(DataOutputStream out, Collection<Book> books) throws IOException {
+        writeVarInt(out, books.size());
+        for (Book b : books) {
+            record.writeUTF(b.getId());
+            record.writeUTF(b.getTitle());
+            writeRef(record, b.getAuthor());
+            writeRef(record, b.getCategory());
+            writeRef(record, b.getCampus());
+            record.writeBoolean(b.isAvailable());
+            writeVarInt(record, b.getCopies());
+            flushRecord(out);
+        }
+    }
+
+    // Returns the file's CRC32. A file at path may still be mapped by this process, so the new one
+    // is renamed over it rather than rewritten in place.
+    private static int writeBookFile(Catalog catalog, String path) throws IOException {
+        ArrayList<Book> books = new ArrayList<>(catalog.size());
+        catalog.forEachBook(books::add);
+        File target = new File(path);
+        File temp = new File(path + ".tmp");
+        int checksum = MappedBookStore.write(temp, books);
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return checksum;
+    }
+
+    // The book file the first campus of a snapshot points at, or null if its books are inline.
+    static String mappedBookFile(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a library data file");
+            int version = in.readUnsignedShort();
+            if (readVarInt(in) == 0) return null;
+            if (version >= 6) in.readInt();
+            new SnapshotCodec().readRef(in);
+            if (version < 2 || in.readByte() != MAPPED_BOOKS) return null;
+            return in.readUTF();
+        }
+    }
+
+    private void writeUser(User u) throws IOException {
+        record.writeUTF(u.id);
+        record.writeUTF(u.name);
+        writeRef(record, u.campus);
+        List<Notification> notes = u.notifications.page(0, NotificationStore.MAX_ENTRIES);
+        writeVarInt(record, notes.size());
+        for (int i = notes.size() - 1; i >= 0; i--) {
+            Notification n = notes.get(i);
+            record.writeLong(n.time);
+            record.writeByte(n.template.ordinal());
+            writeVarInt(record, n.args.length);
+            for (String arg : n.args) writeRef(record, arg);
+        }
+        writeVarInt(record, u.notifications.unreadCount());
+    }
+
+    private void flushRecord(DataOutputStream out) throws IOException {
+        writeVarInt(out, recordBuf.size());
+        recordBuf.writeTo(out);
+        recordBuf.reset();
+    }
+
+    private ArrayList<Campus> readAll(DataInputStream raw) throws IOException {
+        CRC32 crc = new CRC32();
+        DataInputStream in = new DataInputStream(new CheckedInputStream(raw, crc));
+        if (in.readInt() != MAGIC) throw new IOException("Not a library data file");
+        int version = in.readUnsignedShort();
+        if (version > VERSION) throw new IOException("Unsupported data file version " + version);
+        int campusCount = readVarInt(in);
+        checkSection(in, crc, version);
+        ArrayList<Campus> campuses = new ArrayList<>(campusCount);
+        for (int c = 0; c < campusCount; c++) {
+            Campus campus = new Campus(readRef(in));
+            Catalog catalog = campus.getCatalog();
+            int storage = version >= 2 ? in.readByte() : INLINE_BOOKS;
+            if (storage == MAPPED_BOOKS) {
+                File books = new File(in.readUTF());
+                catalog.attach(version >= 10 ? MappedBookStore.open(books, in.readInt()) : MappedBookStore.open(books));
+            }
+            int bookCount = storage == MAPPED_BOOKS ? 0 : readVarInt(in);
+            for (int i = 0; i < bookCount; i++) {
+                DataInputStream r = readRecord(in);
+                String id = r.readUTF(), title = r.readUTF(), author = readRef(r), category = readRef(r), campusName = readRef(r);
+                r.readBoolean();
+                catalog.addBook(new Book(id, title, author, category, campusName, version >= 7 ? readVarInt(r) : 1));
+            }
+            checkSection(in, crc, version);
+            int officerCount = readVarInt(in);
+            for (int i = 0; i < officerCount; i++) {
+                DataInputStream r = readRecord(in);
+                Officer officer = new Officer(r.readUTF(), r.readUTF(), readRef(r));
+                readNotifications(r, officer, version);
+                campus.getOfficers().add(officer);
+            }
+            checkSection(in, crc, version);
+            int studentCount = readVarInt(in);
+            for (int i = 0; i < studentCount; i++) {
+                DataInputStream r = readRecord(in);
+                Student student = new Student(r.readUTF(), r.readUTF(), readRef(r));
+                readNotifications(r, student, version);
+                int loans = readVarInt(r);
+                for (int l = 0; l < loans; l++) {
+                    String bookId = r.readUTF();
+                    long borrowedAt = r.readLong(), dueAt = r.readLong();
+                    byte notices = version >= 5 ? r.readByte() : 0;
+                    Loan loan = new Loan(bookId, student.id, version >= 7 ? readVarInt(r) : 1, borrowedAt, dueAt);
+                    loan.notices = notices;
+                    campus.restoreLoan(loan);
+                }
+                campus.getStudents().add(student);
+            }
+            checkSection(in, crc, version);
+            int holdCount = version >= 8 ? readVarInt(in) : 0;
+            for (int i = 0; i < holdCount; i++) {
+                DataInputStream r = readRecord(in);
+                Hold hold = new Hold(readRef(r), r.readUTF(), r.readLong());
+                hold.copy = readVarInt(r);
+                if (hold.isReady()) hold.expiresAt = r.readLong();
+                campus.restoreHold(hold);
+            }
+            if (version >= 8) checkSection(in, crc, version);
+            if (version >= 9) {
+                readLoanStats(in, campus.getLoanStats(), version);
+                checkSection(in, crc, version);
+            }
+            campuses.add(campus);
+        }
+        return campuses;
+    }
+
+    private void readNotifications(DataInputStream r, User u, int version) throws IOException {
+        int count = readVarInt(r);
+        if (version < 3) {
+            for (int i = 0; i < count; i++) u.notifications.add(Notification.parseLegacy(r.readUTF()));
+            u.notifications.markRead();
+            return;
+        }
+        Notification.Template[] templates = Notification.Template.values();
+        for (int i = 0; i < count; i++) {
+            long time = r.readLong();
+            int template = r.readUnsignedByte();
+            String[] args = new String[readVarInt(r)];
+            for (int a = 0; a < args.length; a++) args[a] = version >= 4 ? readRef(r) : r.readUTF();
+            if (template >= templates.length) throw new IOException("Unknown notification template " + template);
+            u.notifications.add(new Notification(time, templates[template], args));
+        }
+        u.notifications.setUnread(readVarInt(r));
+    }
+
+    private DataInputStream readRecord(DataInputStream in) throws IOException {
+        recordIn.fill(in, readVarInt(in));
+        return recordData;
+    }
+
+    private void writeRef(DataOutputStream out, String value) throws IOException {
+        Integer ref = writeDict.get(value);
+        if (ref != null) {
+            writeVarInt(out, ref);
+            return;
+        }
+        writeVarInt(out, writeDict.size());
+        out.writeUTF(value);
+        writeDict.put(value, writeDict.size());
+    }
+
+    private String readRef(DataInputStream in) throws IOException {
+        int ref = readVarInt(in);
+        if (ref < readDict.size()) return readDict.get(ref);
+        if (ref != readDict.size()) throw new IOException("Corrupt string reference " + ref);
+        String value = in.readUTF();
+        readDict.add(value);
+        return value;
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
+
+class OverdueTracker implements CirculationService.Listener {
+    static final long REMINDER_LEAD_MS = 2L * 24 * 60 * 60 * 1000;
+
+    private static final Comparator<Loan> BY_DUE =
+        Comparator.<Loan>comparingLong(l -> l.dueAt).thenComparing(l -> l.bookId).thenComparingInt(l -> l.copy);
+
+    // One schedule per campus so borrows on different campuses never share a lock. A loan sits
+    // in `active` until returned, and in the two pending sets until each notice has been sent.
+    private static class Schedule {
+        final Campus campus;
+        final TreeSet<Loan> active = new TreeSet<>(BY_DUE);
+        final TreeSet<Loan> pendingReminder = new TreeSet<>(BY_DUE);
+        final TreeSet<Loan> pendingOverdue = new TreeSet<>(BY_DUE);
+
+        Schedule(Campus campus) { this.campus = campus; }
+    }
+
+    private final Map<String, Schedule> schedules = new ConcurrentHashMap<>();
+
+    // Indexes the loans of freshly loaded campuses; notices already delivered are not repeated.
+    public void rebuild(List<Campus> campuses) {
+        schedules.clear();
+        for (Campus campus : campuses) {
+            Schedule schedule = new Schedule(campus);
+            schedules.put(campus.getName(), schedule);
+            campus.getLoans().forEach(loan -> add(schedule, loan));
+        }
+    }
+
+    // A new loan has had no notices yet, so there is no history to consult. Looking there would
+    // take the catalog lock while the borrower still holds the student monitor and book stripe.
+    public void borrowed(Student student, Book book, Loan loan) {
+        Schedule schedule = schedules.get(student.campus);
+        if (schedule == null) return;
+        synchronized (schedule) {
+            schedule.active.add(loan);
+            schedule.pendingReminder.add(loan);
+            schedule.pendingOverdue.add(loan);
+        }
+    }
+
+    public void returned(Student student, Book book, Loan loan, long returnedAt) {
+        Schedule schedule = schedules.get(student.campus);
+        if (schedule == null) return;
+        synchronized (schedule) {
+            schedule.active.remove(loan);
+            schedule.pendingReminder.remove(loan);
+            schedule.pendingOverdue.remove(loan);
+        }
+    }
+
+    private static void add(Schedule schedule, Loan loan) {
+        Student student = schedule.campus.getStudents().get(loan.studentId);
+        synchronized (schedule) {
+            schedule.active.add(loan);
+            if (!sent(schedule, student, loan, Notification.Template.DUE_REMINDER, Loan.REMINDER_SENT)) schedule.pendingReminder.add(loan);
+            if (!sent(schedule, student, loan, Notification.Template.OVERDUE, Loan.OVERDUE_SENT)) schedule.pendingOverdue.add(loan);
+        }
+    }
+
+    // Data files before notice flags only have the student's notification history to go by;
+    // a notice found there is flagged on the loan so the next snapshot records it.
+    private static boolean sent(Schedule schedule, Student student, Loan loan, Notification.Template template, byte notice) {
+        if (loan.noticeSent(notice)) return true;
+        if (student == null || !student.hasNotification(template, noticeArgs(schedule.campus, loan))) return false;
+        loan.markNoticeSent(notice);
+        return true;
+    }
+
+    // Overdue loans at a campus, oldest first, without touching loans that are not yet due.
+    public List<Loan> overdue(Campus campus, long now) {
+        Schedule schedule = schedules.get(campus.getName());
+        if (schedule == null) return Collections.emptyList();
+        synchronized (schedule) {
+            return new ArrayList<>(schedule.active.headSet(new Loan("", null, 0, 0, now), false));
+        }
+    }
+
+    // Sends every reminder and overdue notice that has come due; returns the number sent.
+    public int fire(long now) {
+        int sent = 0;
+        for (Schedule schedule : schedules.values()) {
+            List<Loan> reminders = new ArrayList<>();
+            List<Loan> overdue = new ArrayList<>();
+            synchronized (schedule) {
+                while (!schedule.pendingReminder.isEmpty() && schedule.pendingReminder.first().dueAt - REMINDER_LEAD_MS <= now) {
+                    Loan loan = schedule.pendingReminder.pollFirst();
+                    if (loan.dueAt > now) reminders.add(loan);
+                }
+                while (!schedule.pendingOverdue.isEmpty() && schedule.pendingOverdue.first().dueAt <= now) {
+                    overdue.add(schedule.pendingOverdue.pollFirst());
+                }
+            }
+            sent += send(schedule.campus, reminders, Notification.Template.DUE_REMINDER, Loan.REMINDER_SENT);
+            sent += send(schedule.campus, overdue, Notification.Template.OVERDUE, Loan.OVERDUE_SENT);
+        }
+        return sent;
+    }
+
+    private static int send(Campus campus, List<Loan> loans, Notification.Template template, byte notice) {
+        int sent = 0;
+        for (Loan loan : loans) {
+            loan.markNoticeSent(notice);
+            Student student = campus.getStudents().get(loan.studentId);
+            if (student == null) continue;
+            student.notify(template, noticeArgs(campus, loan));
+            sent++;
+        }
+        return sent;
+    }
+
+    static final DateTimeFormatter DUE_DATE = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneId.systemDefault());
+
+    static String[] noticeArgs(Campus campus, Loan loan) {
+        Book book = campus.getCatalog().searchBook(loan.bookId);
+        String title = book == null ? loan.bookId : book.getTitle();
+        return new String[]{title, loan.bookId, DUE_DATE.format(Instant.ofEpochMilli(loan.dueAt))};
+    }
+}
+
+// Space-Saving top-k: at most `capacity` counters. A new key evicts the smallest counter and
+// inherits its count, recorded as the error bound, so every key seen more than total/capacity
+// times is kept and counts are never under-reported. Not thread-safe; LoanStats guards it.
+final class TopK {
+    static final class Entry {
+        final String key;
+        String label;
+        long count;
+        final long error;
+
+        Entry(String key, String label, long count, long error) {
+            this.key = key;
+            this.label = label;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private static final Comparator<Entry> BY_COUNT = Comparator.<Entry>comparingLong(e -> e.count).thenComparing(e -> e.key);
+
+    private final int capacity;
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> byCount = new TreeSet<>(BY_COUNT);
+
+    TopK(int capacity) { this.capacity = capacity; }
+
+    void add(String key, String label) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            byCount.remove(entry);
+            entry.count++;
+            entry.label = label;
+        } else if (entries.size() < capacity) {
+            entry = new Entry(key, label, 1, 0);
+            entries.put(key, entry);
+        } else {
+            Entry smallest = byCount.pollFirst();
+            entries.remove(smallest.key);
+            entry = new Entry(key, label, smallest.count + 1, smallest.count);
+            entries.put(key, entry);
+        }
+        byCount.add(entry);
+    }
+
+    void restore(Entry entry) {
+        entries.put(entry.key, entry);
+        byCount.add(entry);
+    }
+
+    // Largest counts first; copies, so callers may keep them.
+    List<Entry> top(int n) {
+        List<Entry> top = new ArrayList<>(Math.min(n, byCount.size()));
+        for (Entry e : byCount.descendingSet()) {
+            if (top.size() >= n) break;
+            top.add(new Entry(e.key, e.label, e.count, e.error));
+        }
+        return top;
+    }
+
+    int size() { return entries.size(); }
+}
+
+// Circulation aggregates for one campus, updated from each borrow and return so reports never
+// rescan loans or history: a rollup per calendar day (system zone) and a top-k sketch of titles.
+// Each counted event takes the next event number, which its journal record carries; replay skips
+// numbers up to the one the loaded snapshot was taken at, since those are already in its totals.
+class LoanStats {
+    static final int TOP_TITLES = 256;
+
+    static final class Day {
+        final long epochDay;
+        long borrows;
+        long returns;
+        long lateReturns;
+        long loanMillis;
+        // category as entered -> borrows that day
+        final HashMap<String, Long> byCategory = new HashMap<>();
+
+        Day(long epochDay) { this.epochDay = epochDay; }
+
+        Day copy() {
+            Day day = new Day(epochDay);
+            day.borrows = borrows;
+            day.returns = returns;
+            day.lateReturns = lateReturns;
+            day.loanMillis = loanMillis;
+            day.byCategory.putAll(byCategory);
+            return day;
+        }
+    }
+
+    private final TreeMap<Long, Day> days = new TreeMap<>();
+    private final TopK titles = new TopK(TOP_TITLES);
+    private long events;
+    private long covered;
+
+    static long dayOf(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    // event is 0 for a new borrow and the journalled number on replay. Returns the number to
+    // journal, or 0 when the event was not counted.
+    synchronized long borrowed(Book book, Loan loan, long event) {
+        event = take(event);
+        if (event == 0) return 0;
+        Day day = day(dayOf(loan.borrowedAt));
+        day.borrows++;
+        day.byCategory.merge(book.getCategory(), 1L, Long::sum);
+        titles.add(book.getId(), book.getTitle());
+        return event;
+    }
+
+    // Journal records from before returns carried a time have returnedAt 0 and are not counted.
+    synchronized long returned(Loan loan, long returnedAt, long event) {
+        if (returnedAt <= 0) return 0;
+        event = take(event);
+        if (event == 0) return 0;
+        Day day = day(dayOf(returnedAt));
+        day.returns++;
+        if (returnedAt > loan.dueAt) day.lateReturns++;
+        day.loanMillis += Math.max(0, returnedAt - loan.borrowedAt);
+        return event;
+    }
+
+    // Journal records from before event numbers carry none and are counted as new events.
+    private long take(long event) {
+        if (event == 0) return ++events;
+        if (event <= covered) return 0;
+        events = Math.max(events, event);
+        return event;
+    }
+
+    private Day day(long epochDay) {
+        return days.computeIfAbsent(epochDay, Day::new);
+    }
+
+    // Copies of the days in [fromDay, toDay].
+    synchronized List<Day> days(long fromDay, long toDay) {
+        List<Day> range = new ArrayList<>();
+        for (Day day : days.subMap(fromDay, true, toDay, true).values()) range.add(day.copy());
+        return range;
+    }
+
+    synchronized List<Day> days() { return days(Long.MIN_VALUE, Long.MAX_VALUE); }
+
+    synchronized List<TopK.Entry> topTitles(int n) { return titles.top(n); }
+
+    synchronized long getEvents() { return events; }
+
+    synchronized void restore(Day day) { days.put(day.epochDay, day); }
+
+    synchronized void restore(TopK.Entry title) { titles.restore(title); }
+
+    synchronized void restore(long events) {
+        this.events = events;
+        this.covered = events;
+    }
+}
+
+// Feeds borrow and return events to each campus's LoanStats and answers reports from them, so a
+// report costs one pass over the days asked for, however much history is behind them. Events are
+// numbered as LoanStats describes; the service journals the number each call returns.
+class BorrowingAnalytics {
+    private final Function<String, Campus> campuses;
+
+    BorrowingAnalytics(Function<String, Campus> campuses) { this.campuses = campuses; }
+
+    long borrowed(Student student, Book book, Loan loan, long event) {
+        Campus campus = campuses.apply(student.campus);
+        return campus == null ? 0 : campus.getLoanStats().borrowed(book, loan, event);
+    }
+
+    long returned(Student student, Loan loan, long returnedAt, long event) {
+        Campus campus = campuses.apply(student.campus);
+        return campus == null ? 0 : campus.getLoanStats().returned(loan, returnedAt, event);
+    }
+
+    static final class TitleCount {
+        final String campus;
+        final String bookId;
+        final String title;
+        final long borrows;
+
+        TitleCount(String campus, String bookId, String title, long borrows) {
+            this.campus = campus;
+            this.bookId = bookId;
+            this.title = title;
+            this.borrows = borrows;
+        }
+    }
+
+    static final class Report {
+        final LocalDate from;
+        final LocalDate to;
+        long borrows;
+        long returns;
+        long lateReturns;
+        long loanMillis;
+        long activeLoans;
+        long overdueLoans;
+        // Categories are grouped case-insensitively under the first spelling seen.
+        final TreeMap<String, Long> byCategory = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final LinkedHashMap<String, Long> byCampus = new LinkedHashMap<>();
+        final TreeMap<LocalDate, long[]> byDay = new TreeMap<>();   // {borrows, returns}
+        // All time rather than the report's range: the sketch keeps no dates.
+        final List<TitleCount> topTitles = new ArrayList<>();
+
+        Report(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        double averageLoanDays() { return returns == 0 ? 0 : loanMillis / (double) returns / (24 * 60 * 60 * 1000); }
+
+        double lateReturnRate() { return returns == 0 ? 0 : lateReturns / (double) returns; }
+
+        double overdueRate() { return activeLoans == 0 ? 0 : overdueLoans / (double) activeLoans; }
+    }
+
+    // Borrowing between `from` and `to` inclusive on the given campuses; null dates are open ends.
+    Report report(List<Campus> scope, LocalDate from, LocalDate to, int topTitles) {
+        Report report = new Report(from, to);
+        long fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        long toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+        for (Campus campus : scope) {
+            long campusBorrows = 0;
+            for (LoanStats.Day day : campus.getLoanStats().days(fromDay, toDay)) {
+                campusBorrows += day.borrows;
+                report.returns += day.returns;
+                report.lateReturns += day.lateReturns;
+                report.loanMillis += day.loanMillis;
+                day.byCategory.forEach((category, n) -> report.byCategory.merge(category, n, Long::sum));
+                long[] totals = report.byDay.computeIfAbsent(LocalDate.ofEpochDay(day.epochDay), d -> new long[2]);
+                totals[0] += day.borrows;
+                totals[1] += day.returns;
+            }
+            report.borrows += campusBorrows;
+            report.byCampus.put(campus.getName(), campusBorrows);
+            for (TopK.Entry e : campus.getLoanStats().topTitles(topTitles)) {
+                report.topTitles.add(new TitleCount(campus.getName(), e.key, e.label, e.count));
+            }
+        }
+        report.topTitles.sort(Comparator.<TitleCount>comparingLong(t -> t.borrows).reversed()
+            .thenComparing(t -> t.campus).thenComparing(t -> t.bookId));
+        if (report.topTitles.size() > topTitles) report.topTitles.subList(topTitles, report.topTitles.size()).clear();
+        return report;
+    }
+}
+
+class Journal {
+    static final byte ADD_BOOK = 1;
+    static final byte REMOVE_BOOK = 2;
+    static final byte UPDATE_BOOK = 3;
+    static final byte BORROW_BOOK = 4;
+    static final byte RETURN_BOOK = 5;
+    static final byte HIRE_OFFICER = 6;
+    static final byte FIRE_OFFICER = 7;
+    static final byte REGISTER_STUDENT = 8;
+    static final byte BROADCAST = 9;
+    static final byte SET_COPIES = 10;
+    static final byte PLACE_HOLD = 11;
+    static final byte CANCEL_HOLD = 12;
+    static final byte EXPIRE_HOLD = 13;
+
+    interface Handler {
+        void apply(byte op, String[] fields);
+    }
+
+    // Appends only fill an in-memory buffer; commit() writes and fsyncs everything buffered so far
+    // as one group. While a snapshot is being written, the records it covers sit in the retired
+    // file (<log>.old) so appends can continue into a fresh log. Afterwards they move to <log>.prev,
+    // which brings the previous snapshot generation up to date if the newest one is damaged.
+    private final File file;
+    private final File retired;
+    private final File previous;
+    private final Object io = new Object();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(4096);
+    private FileOutputStream fileOut;
+    private int recordCount;
+    private long appended;
+    private long durable;
+
+    public Journal(File file) {
+        this.file = file;
+        this.retired = new File(file.getPath() + ".old");
+        this.previous = new File(file.getPath() + ".prev");
+    }
+
+    // Record layout: [int length][byte op][byte count][UTF fields...][int crc32 of payload]
+    // Returns the record's sequence number; it is durable once commit() has covered it.
+    public synchronized long append(byte op, String... fields) throws IOException {
+        record.reset();
+        recordOut.writeByte(op);
+        recordOut.writeByte(fields.length);
+        for (String f : fields) recordOut.writeUTF(f);
+        CRC32 crc = new CRC32();
+        crc.update(record.toByteArray(), 0, record.size());
+
+        DataOutputStream out = new DataOutputStream(pending);
+        out.writeInt(record.size());
+        record.writeTo(out);
+        out.writeInt((int) crc.getValue());
+        recordCount++;
+        return ++appended;
+    }
+
+    // Writes and fsyncs every record appended so far; returns the sequence now durable.
+    public long commit() throws IOException {
+        synchronized (io) {
+            ByteArrayOutputStream batch;
+            long upTo;
+            synchronized (this) {
+                if (pending.size() == 0) return durable;
+                batch = pending;
+                pending = new ByteArrayOutputStream(Math.max(4096, batch.size()));
+                upTo = appended;
+            }
+            try {
+                if (fileOut == null) fileOut = new FileOutputStream(file, true);
+                batch.writeTo(fileOut);
+                fileOut.getFD().sync();
+            } catch (IOException e) {
+                // Keep the batch for the next attempt; a partly written copy is harmless on replay.
+                synchronized (this) {
+                    pending.writeTo(batch);
+                    pending = batch;
+                }
+                try {
+                    closeFile();
+                } catch (IOException ignored) {
+                    fileOut = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                durable = upTo;
+            }
+            return upTo;
+        }
+    }
+
+    public synchronized long getAppended() { return appended; }
+    public synchronized long getDurable() { return durable; }
+    public synchronized int getRecordCount() { return recordCount; }
+    public boolean exists() { return file.exists() || retired.exists(); }
+
+    // Moves the committed log aside before a snapshot; appends from now on go to a fresh log.
+    public void rotate() throws IOException {
+        synchronized (io) {
+            commit();
+            long covered;
+            synchronized (this) {
+                covered = durable;
+            }
+            closeFile();
+            if (file.exists()) {
+                if (retired.exists()) {
+                    // An earlier snapshot failed; keep its records ahead of these.
+                    try (FileOutputStream out = new FileOutputStream(retired, true)) {
+                        Files.copy(file.toPath(), out);
+                        out.getFD().sync();
+                    }
+                    Files.delete(file.toPath());
+                } else {
+                    Files.move(file.toPath(), retired.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            synchronized (this) {
+                recordCount = (int) (appended - covered);
+            }
+        }
+    }
+
+    // Called once a snapshot covering the retired log is safely on disk. newGeneration is true when
+    // the snapshot it replaced became the previous generation, which the retired log then follows;
+    // otherwise the previous generation is unchanged and the retired log extends its tail.
+    public void retire(boolean newGeneration) throws IOException {
+        synchronized (io) {
+            if (!retired.exists()) return;
+            if (newGeneration || !previous.exists()) {
+                Files.move(retired.toPath(), previous.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return;
+            }
+            try (FileOutputStream out = new FileOutputStream(previous, true)) {
+                Files.copy(retired.toPath(), out);
+                out.getFD().sync();
+            }
+            Files.delete(retired.toPath());
+        }
+    }
+
+    public void close() throws IOException {
+        synchronized (io) {
+            commit();
+            closeFile();
+        }
+    }
+
+    private void closeFile() throws IOException {
+        if (fileOut == null) return;
+        fileOut.close();
+        fileOut = null;
+    }
+
+    public int replay(Handler handler) throws IOException {
+        return replay(handler, false);
+    }
+
+    // Replays the retired log (if a snapshot did not finish) and then the current one, preceded by
+    // the previous generation's log when the state was restored from that snapshot.
+    public int replay(Handler handler, boolean fromPrevious) throws IOException {
+        synchronized (io) {
+            if (fromPrevious) replay(previous, handler);
+            int count = replay(retired, handler);
+            count += replay(file, handler);
+            synchronized (this) {
+                recordCount = count;
+            }
+            return count;
+        }
+    }
+
+    // Replays every intact record and cuts off a torn or corrupt tail left by a crash.
+    private static int replay(File file, Handler handler) throws IOException {
+        if (!file.exists()) return 0;
+        long good = 0;
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > file.length()) break;
+                byte[] payload = new byte[length];
+                int stored;
+                try {
+                    in.readFully(payload);
+                    stored = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != stored) break;
+
+                DataInputStream rec = new DataInputStream(new ByteArrayInputStream(payload));
+                byte op = rec.readByte();
+                String[] fields = new String[rec.readUnsignedByte()];
+                for (int i = 0; i < fields.length; i++) fields[i] = rec.readUTF();
+                handler.apply(op, fields);
+                good += 8 + length;
+                count++;
+            }
+        }
+        if (good < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(good);
+            }
+        }
+        return count;
+    }
+}
+
+class Csv {
+    private Csv() {}
+
+    // Reads one RFC 4180 record (quoted fields may contain commas, quotes and newlines); null at end of input.
+    static List<String> readRecord(Reader in) throws IOException {
+        int c = in.read();
+        if (c == -1) return null;
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) throw new IOException("Unterminated quoted field");
+                if (c == '"') {
+                    in.mark(1);
+                    int n = in.read();
+                    if (n == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (n != -1) in.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                break;
+            } else if (c == '\r') {
+                in.mark(1);
+                if (in.read() != '\n') in.reset();
+                break;
+            } else {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    static void writeRecord(Writer out, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) out.write(',');
+            String f = fields[i];
+            if (f.indexOf(',') >= 0 || f.indexOf('"') >= 0 || f.indexOf('\n') >= 0 || f.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(f.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(f);
+            }
+        }
+        out.write('\n');
+    }
+}
+
+class CampusShard {
+    // Snapshots are written to <dat>.tmp and renamed over <dat> once on disk; the snapshot they
+    // replace is kept as <dat>.prev so a damaged live file can be recovered from. In mapped mode
+    // each snapshot writes a new <books>.<n> and records its name and checksum, so the previous
+    // generation keeps the book file it was written with.
+    private final File dataFile;
+    private final File tempFile;
+    private final File previousFile;
+    private final File bookFile;
+    private final Journal journal;
+    private Campus campus;
+    private boolean fromPrevious;
+
+    // bookFile is null when the catalog is stored inline in the snapshot; otherwise it is the base
+    // name of the shard's book files.
+    public CampusShard(File dataFile, File journalFile, File bookFile) {
+        this.dataFile = dataFile;
+        this.tempFile = new File(dataFile.getPath() + ".tmp");
+        this.previousFile = new File(dataFile.getPath() + ".prev");
+        this.bookFile = bookFile;
+        this.journal = new Journal(journalFile);
+    }
+
+    public Campus getCampus() { return campus; }
+    void setCampus(Campus campus) { this.campus = campus; }
+    Journal getJournal() { return journal; }
+    boolean exists() { return dataFile.exists() || tempFile.exists() || previousFile.exists(); }
+
+    // Loads the newest snapshot that validates: the live file, then one that was written but not
+    // yet renamed into place, then the previous generation. A damaged live file is moved aside to
+    // <dat>.damaged. Returns false when the shard has no snapshot yet.
+    public boolean read() throws IOException {
+        IOException failure = null;
+        for (File file : new File[]{dataFile, tempFile, previousFile}) {
+            if (!file.exists()) continue;
+            try {
+                campus = read(file);
+            } catch (IOException e) {
+                if (failure == null) failure = new IOException("Shard " + file + ": " + e.getMessage(), e);
+                continue;
+            }
+            fromPrevious = file == previousFile;
+            if (file != dataFile && dataFile.exists()) {
+                Files.move(dataFile.toPath(), new File(dataFile.getPath() + ".damaged").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        }
+        if (failure != null) throw failure;
+        return false;
+    }
+
+    private static Campus read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            List<Campus> stored = SnapshotCodec.read(in);
+            if (stored.size() != 1) throw new IOException("holds " + stored.size() + " campuses");
+            return stored.get(0);
+        }
+    }
+
+    // Replays the journal on top of whichever snapshot read() loaded.
+    public int replay(Journal.Handler handler) throws IOException {
+        return journal.replay(handler, fromPrevious);
+    }
+
+    public long append(byte op, String... fields) throws IOException {
+        return journal.append(op, fields);
+    }
+
+    boolean checkpointDue() { return journal.getRecordCount() >= LibraryService.SNAPSHOT_INTERVAL; }
+
+    // Returns true when the snapshot it replaced was kept as the previous generation.
+    public synchronized boolean save() throws IOException {
+        String books = bookFile == null ? null : nextBookFile();
+        try (FileOutputStream file = new FileOutputStream(tempFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            SnapshotCodec.write(out, Collections.singletonList(campus), books == null ? null : c -> books);
+            file.getFD().sync();
+        }
+        boolean kept = dataFile.exists();
+        if (kept) Files.move(dataFile.toPath(), previousFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(tempFile.toPath(), dataFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        if (bookFile != null) deleteStaleBookFiles();
+        return kept;
+    }
+
+    // <books>.<n>, one generation past the newest book file on disk.
+    private String nextBookFile() {
+        long next = 1;
+        for (File file : bookFiles()) {
+            String suffix = file.getName().substring(bookFile.getName().length());
+            if (suffix.matches("\\.\\d{1,18}")) next = Math.max(next, Long.parseLong(suffix.substring(1)) + 1);
+        }
+        return bookFile.getPath() + "." + next;
+    }
+
+    // Removes book files that neither the live nor the previous snapshot points at; if either
+    // snapshot cannot be read, all of them are kept.
+    private void deleteStaleBookFiles() {
+        Set<String> keep = new HashSet<>();
+        try {
+            for (File snapshot : new File[]{dataFile, previousFile}) {
+                String books = snapshot.exists() ? SnapshotCodec.mappedBookFile(snapshot) : null;
+                if (books != null) keep.add(new File(books).getName());
+            }
+        } catch (IOException e) {
+            return;
+        }
+        for (File file : bookFiles()) {
+            if (keep.contains(file.getName())) continue;
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                // Some platforms refuse to delete a file this process still maps; the next save retries.
+            }
+        }
+    }
+
+    // <books> (written before generations), <books>.<n> and any <books>.<n>.tmp left by a crash.
+    private File[] bookFiles() {
+        String base = bookFile.getName();
+        File[] files = bookFile.getAbsoluteFile().getParentFile().listFiles((dir, name) ->
+            name.startsWith(base) && name.substring(base.length()).matches("(\\.\\d{1,18})?(\\.tmp)?"));
+        return files == null ? new File[0] : files;
+    }
+
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(dataFile.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Some platforms cannot open a directory; the renames are still atomic there.
+        }
+    }
+
+    // Writes a snapshot and retires the journal it now covers. Appends continue meanwhile; any that
+    // race with the snapshot are replayed on top of it, which replay tolerates.
+    public synchronized void checkpoint() throws IOException {
+        journal.rotate();
+        journal.retire(save());
+        fromPrevious = false;
+    }
+
+    public synchronized void close() throws IOException { journal.close(); }
+}
+
+// Operation counters and latency histograms per campus, plus data-size gauges. Recording costs a
+// map lookup and a few LongAdder increments; percentiles and gauges are only computed when read.
+// Latencies go into log2 buckets of microseconds, so percentiles are upper bounds within 2x.
+class Metrics {
+    enum Op { BORROW, RETURN, SEARCH, LOOKUP, ADD_BOOK, UPDATE_BOOK, REMOVE_BOOK, LOGIN, SAVE, LOAD, HOLD }
+    enum Gauge { BOOKS, STUDENTS, ACTIVE_LOANS, NOTIFICATIONS }
+
+    // Campus label for operations that span all campuses.
+    static final String ALL = "all";
+    static final String JMX_DOMAIN = "com.mycompany.library";
+    private static final int BUCKETS = 40;
+
+    interface GaugeSource {
+        long read(Gauge gauge, String campus);
+    }
+
+    static final class Stats {
+        final LongAdder count = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos, boolean ok) {
+            count.increment();
+            if (!ok) failed.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000)));
+        }
+
+        long meanMicros() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / n / 1000;
+        }
+
+        long maxMicros() { return maxNanos.get() / 1000; }
+
+        // Upper bound of the bucket holding the given fraction of samples, capped at the maximum.
+        long percentileMicros(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += counts[i] = buckets.get(i);
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) return i == 0 ? 0 : Math.min((1L << i) - 1, maxMicros());
+            }
+            return 0;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Stats[]> stats = new ConcurrentHashMap<>();
+    private volatile GaugeSource gauges = (gauge, campus) -> 0;
+
+    void setGauges(GaugeSource gauges) { this.gauges = gauges; }
+
+    public void record(Op op, String campus, long startNanos, boolean ok) {
+        statsFor(campus)[op.ordinal()].record(System.nanoTime() - startNanos, ok);
+    }
+
+    private Stats[] statsFor(String campus) {
+        Stats[] t = stats.get(campus);
+        if (t != null) return t;
+        return stats.computeIfAbsent(campus, c -> {
+            Stats[] created = new Stats[Op.values().length];
+            for (int i = 0; i < created.length; i++) created[i] = new Stats();
+            return created;
+        });
+    }
+
+    public Stats get(Op op, String campus) { return statsFor(campus)[op.ordinal()]; }
+
+    public long gauge(Gauge gauge, String campus) { return gauges.read(gauge, campus); }
+
+    public Set<String> campuses() { return new TreeSet<>(stats.keySet()); }
+
+    // One line per metric in a Prometheus-like text form, e.g.
+    // library_borrow{campus="Main Campus"} count=12 failed=1 mean_us=40 p50_us=31 p99_us=127 max_us=133
+    public String report(Collection<String> campusNames) {
+        StringBuilder sb = new StringBuilder();
+        TreeSet<String> names = new TreeSet<>(campusNames);
+        names.addAll(stats.keySet());
+        for (String campus : names) {
+            String label = "{campus=\"" + campus + "\"}";
+            for (Op op : Op.values()) {
+                Stats t = stats.containsKey(campus) ? get(op, campus) : null;
+                if (t == null || t.count.sum() == 0) continue;
+                sb.append("library_").append(op.name().toLowerCase()).append(label)
+                  .append(" count=").append(t.count.sum())
+                  .append(" failed=").append(t.failed.sum())
+                  .append(" mean_us=").append(t.meanMicros())
+                  .append(" p50_us=").append(t.percentileMicros(0.5))
+                  .append(" p99_us=").append(t.percentileMicros(0.99))
+                  .append(" max_us=").append(t.maxMicros()).append('\n');
+            }
+            if (campus.equals(ALL)) continue;
+            for (Gauge g : Gauge.values()) {
+                sb.append("library_").append(g.name().toLowerCase()).append(label)
+                  .append(' ').append(gauge(g, campus)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    // Replaces the file in one rename so readers never see a partial report.
+    public void writeTo(File file, Collection<String> campusNames) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            out.write("# " + Instant.now() + "\n");
+            out.write(report(campusNames));
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Registers one MBean per campus (com.mycompany.library:type=Metrics,campus="...") whose
+    // attributes are <op>Count, <op>Failed, <op>MeanMicros, <op>P50Micros, <op>P99Micros,
+    // <op>MaxMicros and one per gauge.
+    public void registerMBeans(Collection<String> campusNames) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (String campus : campusNames) {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Metrics,campus=" + ObjectName.quote(campus));
+            if (!server.isRegistered(name)) server.registerMBean(new CampusBean(campus), name);
+        }
+    }
+
+    private final class CampusBean implements DynamicMBean {
+        private final String campus;
+        private final MBeanInfo info;
+
+        CampusBean(String campus) {
+            this.campus = campus;
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Op op : Op.values()) {
+                for (String stat : new String[]{"Count", "Failed", "MeanMicros", "P50Micros", "P99Micros", "MaxMicros"}) {
+                    attributes.add(new MBeanAttributeInfo(attributeName(op.name()) + stat, "long",
+                        op.name().toLowerCase() + " " + stat, true, false, false));
+                }
+            }
+            for (Gauge g : Gauge.values()) {
+                attributes.add(new MBeanAttributeInfo(attributeName(g.name()), "long", g.name().toLowerCase(), true, false, false));
+            }
+            info = new MBeanInfo(CampusBean.class.getName(), "Library metrics for " + campus,
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            for (Gauge g : Gauge.values()) {
+                if (attribute.equals(attributeName(g.name()))) return gauge(g, campus);
+            }
+            for (Op op : Op.values()) {
+                String prefix = attributeName(op.name());
+                if (!attribute.startsWith(prefix)) continue;
+                Stats t = get(op, campus);
+                switch (attribute.substring(prefix.length())) {
+                    case "Count": return t.count.sum();
+                    case "Failed": return t.failed.sum();
+                    case "MeanMicros": return t.meanMicros();
+                    case "P50Micros": return t.percentileMicros(0.5);
+                    case "P99Micros": return t.percentileMicros(0.99);
+                    case "MaxMicros": return t.maxMicros();
+                    default: break;
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                try {
+                    list.add(new Attribute(a, getAttribute(a)));
+                } catch (AttributeNotFoundException e) {
+                    // Unknown names are left out, as the DynamicMBean contract allows.
+                }
+            }
+            return list;
+        }
+
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        public AttributeList setAttributes(AttributeList attributes) { return new AttributeList(); }
+
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action));
+        }
+
+        public MBeanInfo getMBeanInfo() { return info; }
+    }
+
+    // ADD_BOOK -> AddBook
+    private static String attributeName(String constant) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : constant.split("_")) sb.append(part.charAt(0)).append(part.substring(1).toLowerCase());
+        return sb.toString();
+    }
+}
+
+// Group commit for all shard journals. Operations only buffer their journal records; one
+// background thread writes and fsyncs them every commitIntervalMillis, or sooner once commitBatch
+// records are waiting or a caller asks for a durability acknowledgment. Until start() (and after
+// stop()) acknowledgments commit on the calling thread. After each commit the same thread
+// checkpoints any shard whose journal has grown past the snapshot interval, so operations never
+// wait for a snapshot while holding circulation locks.
+class PersistenceWriter {
+    private final List<CampusShard> shards;
+    private final int commitBatch;
+    private final long commitIntervalMillis;
+    private final LibraryService.ShardTask checkpoint;
+    private final List<CompletableFuture<Void>> acks = new ArrayList<>();
+    private final Object checkpoints = new Object();
+    private int paused;
+    private int waiting;
+    private boolean stopping;
+    private Thread thread;
+    private volatile IOException failure;
+
+    PersistenceWriter(List<CampusShard> shards, int commitBatch, long commitIntervalMillis,
+                      LibraryService.ShardTask checkpoint) {
+        this.shards = shards;
+        this.commitBatch = commitBatch;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.checkpoint = checkpoint;
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        stopping = false;
+        thread = new Thread(this::run, "journal-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Called after each journal append.
+    public synchronized void appended() {
+        if (++waiting >= commitBatch) notifyAll();
+    }
+
+    // Completes once every record appended before this call is on disk.
+    public synchronized CompletableFuture<Void> whenDurable() {
+        CompletableFuture<Void> ack = new CompletableFuture<>();
+        if (thread == null) {
+            try {
+                commitAll();
+                ack.complete(null);
+            } catch (IOException e) {
+                ack.completeExceptionally(e);
+            }
+            return ack;
+        }
+        acks.add(ack);
+        notifyAll();
+        return ack;
+    }
+
+    // The last commit error, cleared once a later commit succeeds.
+    public IOException getFailure() { return failure; }
+
+    // Holds off automatic checkpoints, waiting for one in progress to finish; calls nest.
+    public void pauseCheckpoints() {
+        synchronized (checkpoints) {
+            paused++;
+        }
+    }
+
+    public void resumeCheckpoints() {
+        synchronized (checkpoints) {
+            paused--;
+        }
+    }
+
+    // Stops the thread after a final commit of everything appended so far.
+    public void stop() throws IOException {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            if (t == null) return;
+            stopping = true;
+            notifyAll();
+        }
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing the journal");
+        }
+        synchronized (this) {
+            thread = null;
+        }
+        if (failure != null) throw failure;
+    }
+
+    private void run() {
+        while (true) {
+            List<CompletableFuture<Void>> round;
+            boolean last;
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + commitIntervalMillis;
+                while (!stopping && acks.isEmpty() && waiting < commitBatch) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) break;
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        stopping = true;
+                    }
+                }
+                round = new ArrayList<>(acks);
+                acks.clear();
+                waiting = 0;
+                last = stopping;
+            }
+            try {
+                commitAll();
+                failure = null;
+                round.forEach(ack -> ack.complete(null));
+            } catch (IOException e) {
+                failure = e;
+                round.forEach(ack -> ack.completeExceptionally(e));
+            }
+            if (last) return;
+            checkpointDue();
+        }
+    }
+
+    // A failed checkpoint leaves its records in the journal; the shard is tried again once it has
+    // logged another interval's worth.
+    private void checkpointDue() {
+        synchronized (checkpoints) {
+            if (paused > 0) return;
+            for (CampusShard shard : shards) {
+                if (!shard.checkpointDue()) continue;
+                try {
+                    checkpoint.run(shard);
+                } catch (IOException e) {
+                    // Counted as a failed save in the metrics; the journal still holds everything.
+                }
+            }
+        }
+    }
+
+    private void commitAll() throws IOException {
+        IOException error = null;
+        for (CampusShard shard : shards) {
+            try {
+                shard.getJournal().commit();
+            } catch (IOException e) {
+                if (error == null) error = e;
+            }
+        }
+        if (error != null) throw error;
+    }
+}
+
+class LibraryService {
+    static final String[] DEFAULT_CAMPUSES = {
+        "Atse Tewodros Campus", "GC Campus", "Maraki Campus", "Fasil Campus", "Teda Campus"
+    };
+    static final int LOAN_DAYS = 14;
+    static final int SNAPSHOT_INTERVAL = 1000;
+    static final String[] CSV_HEADER = { "id", "title", "author", "category", "campus", "copies" };
+    private static final int IMPORT_BATCH = 1000;
+    private static final int IMPORT_QUEUE_BATCHES = 4;
+    private static final int IMPORT_MAX_ERRORS = 100;
+    // Journal group commit: records are fsynced at most this many milliseconds after the operation,
+    // or as soon as this many are waiting.
+    static final int DEFAULT_COMMIT_BATCH = 256;
+    static final long DEFAULT_COMMIT_INTERVAL_MS = 100;
+    private static final int CIRCULATION_STRIPES = 64;
+    private static final long OVERDUE_CHECK_INTERVAL_MS = 60_000;
+    static final int BROADCAST_BATCH = 1024;
+
+    enum Status { OK, INVALID, NOT_FOUND, DUPLICATE, NOT_AVAILABLE, LIMIT_REACHED, NOT_BORROWED }
+
+    enum Audience { ALL, ACTIVE_LOANS, CATEGORY }
+
+    static class ImportReport {
+        int imported;
+        int rejected;
+        final List<String> errors = new ArrayList<>();
+
+        void reject(long line, String reason) {
+            rejected++;
+            if (errors.size() < IMPORT_MAX_ERRORS) errors.add("Line " + line + ": " + reason);
+        }
+    }
+
+    static class Result<T> {
+        final Status status;
+        final T value;
+        final String message;
+
+        private Result(Status status, T value, String message) {
+            this.status = status;
+            this.value = value;
+            this.message = message;
+        }
+
+        static <T> Result<T> ok(T value) { return new Result<>(Status.OK, value, null); }
+        static <T> Result<T> fail(Status status, String message) { return new Result<>(status, null, message); }
+        boolean isOk() { return status == Status.OK; }
+    }
+
+    // Each campus is an independent shard with its own snapshot and journal, named after dataFile:
+    // library_data.dat -> library_data.<n>.dat / .log (and .books.<generation> in mapped mode).
+    private final ArrayList<CampusShard> shards = new ArrayList<>();
+    private ArrayList<Campus> campuses = new ArrayList<>();
+    private final HashMap<String, CampusShard> shardsByCampus = new HashMap<>();
+    private final File dataFile;
+    private final File journalFile;
+    private final boolean mappedStorage;
+    private final ExecutorService shardPool = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(DEFAULT_CAMPUSES.length, Runtime.getRuntime().availableProcessors())), r -> {
+            Thread t = new Thread(r, "campus-shard");
+            t.setDaemon(true);
+            return t;
+        });
+    private final CirculationService circulation = new CirculationService(CIRCULATION_STRIPES);
+    private final OverdueTracker overdue = new OverdueTracker();
+    private final BorrowingAnalytics analytics = new BorrowingAnalytics(this::getCampus);
+    private final PersistenceWriter writer;
+    private final Metrics metrics = new Metrics();
+    private ScheduledExecutorService overdueTimer;
+    private ScheduledExecutorService metricsTimer;
+    private File metricsFile;
+    private volatile boolean replaying;
+
+    public LibraryService(File dataFile, File journalFile, boolean mappedStorage) {
+        this(dataFile, journalFile, mappedStorage, DEFAULT_COMMIT_BATCH, DEFAULT_COMMIT_INTERVAL_MS);
+    }
+
+    // dataFile and journalFile name the shard files and, if present, a pre-sharding single store
+    // that is migrated into shards on load. Operations return before their journal record is on
+    // disk; use flush() or whenDurable() where an acknowledgment is needed.
+    public LibraryService(File dataFile, File journalFile, boolean mappedStorage,
+                          int commitBatch, long commitIntervalMillis) {
+        this.dataFile = dataFile;
+        this.journalFile = journalFile;
+        this.mappedStorage = mappedStorage;
+        this.writer = new PersistenceWriter(shards, commitBatch, commitIntervalMillis,
+            timed(Metrics.Op.SAVE, CampusShard::checkpoint));
+        metrics.setGauges(this::gauge);
+        // Replayed borrows and returns are counted by applyRecord, which has their event numbers.
+        circulation.addListener(new CirculationService.Listener() {
+            public void borrowed(Student student, Book book, Loan loan) {
+                if (replaying) return;
+                long event = analytics.borrowed(student, book, loan, 0);
+                record(Journal.BORROW_BOOK, student.campus, student.id, book.getId(),
+                    String.valueOf(loan.borrowedAt), String.valueOf(loan.dueAt), String.valueOf(loan.copy), String.valueOf(event));
+            }
+            public void returned(Student student, Book book, Loan loan, long returnedAt) {
+                if (replaying) return;
+                long event = analytics.returned(student, loan, returnedAt, 0);
+                record(Journal.RETURN_BOOK, student.campus, student.id, book.getId(), String.valueOf(returnedAt), String.valueOf(event));
+            }
+            public void holdPlaced(Hold hold, Book book) {
+                record(Journal.PLACE_HOLD, book.getCampus(), hold.studentId, hold.bookId, String.valueOf(hold.placedAt));
+            }
+            public void holdCancelled(Hold hold, Book book, long at) {
+                record(Journal.CANCEL_HOLD, book.getCampus(), hold.studentId, hold.bookId, String.valueOf(at));
+            }
+            public void holdExpired(Hold hold, Book book, long at) {
+                record(Journal.EXPIRE_HOLD, book.getCampus(), hold.studentId, hold.bookId, String.valueOf(at));
+            }
+            public void holdReady(Hold hold, Book book) {
+                Student student = getCampus(book.getCampus()).getStudents().get(hold.studentId);
+                if (student != null) {
+                    student.notify(Notification.Template.HOLD_READY, book.getTitle(), book.getId(),
+                        OverdueTracker.DUE_DATE.format(Instant.ofEpochMilli(hold.expiresAt)));
+                }
+            }
+        });
+        circulation.addListener(overdue);
+    }
+
+    public List<Campus> getCampuses() { return Collections.unmodifiableList(campuses); }
+
+    public Campus getCampus(String name) {
+        CampusShard shard = shardsByCampus.get(name);
+        return shard == null ? null : shard.getCampus();
+    }
+
+    // ---------- books ----------
+    public Result<Book> addBook(Campus campus, String id, String title, String author, String category) {
+        return addBook(campus, id, title, author, category, 1);
+    }
+
+    // One record for all physical copies of a title.
+    public Result<Book> addBook(Campus campus, String id, String title, String author, String category, int copies) {
+        return timed(Metrics.Op.ADD_BOOK, campus.getName(), () -> {
+            checkWritable();
+            if (isBlank(id)) return Result.fail(Status.INVALID, "Book ID cannot be empty!");
+            if (isBlank(title)) return Result.fail(Status.INVALID, "Title cannot be empty!");
+            if (isBlank(author)) return Result.fail(Status.INVALID, "Author cannot be empty!");
+            if (isBlank(category)) return Result.fail(Status.INVALID, "Category cannot be empty!");
+            if (copies < 1) return Result.fail(Status.INVALID, "A book needs at least one copy!");
+            if (campus.getCatalog().searchBook(id.trim()) != null) {
+                return Result.fail(Status.DUPLICATE, "A book with this ID already exists!");
+            }
+            Book book = new Book(id.trim(), title.trim(), author.trim(), category.trim(), campus.getName(), copies);
+            campus.getCatalog().addBook(book);
+            record(Journal.ADD_BOOK, campus.getName(), book.getId(), book.getTitle(), book.getAuthor(), book.getCategory(),
+                Integer.toString(copies));
+            return Result.ok(book);
+        });
+    }
+
+    // Adds or withdraws copies of a title; copies that are out cannot be withdrawn.
+    public Result<Book> setCopies(Campus campus, String id, int copies) {
+        return timed(Metrics.Op.UPDATE_BOOK, campus.getName(), () -> {
+            checkWritable();
+            Book book = campus.getCatalog().searchBook(id);
+            if (book == null) return Result.fail(Status.NOT_FOUND, "Book not found!");
+            if (copies < 1) return Result.fail(Status.INVALID, "A book needs at least one copy!");
+            long now = System.currentTimeMillis();
+            if (!circulation.setCopies(campus.getHolds(), book, copies, now)) {
+                return Result.fail(Status.NOT_AVAILABLE, "Copies that are on loan cannot be withdrawn!");
+            }
+            record(Journal.SET_COPIES, campus.getName(), id, Integer.toString(copies), String.valueOf(now));
+            return Result.ok(book);
+        });
+    }
+
+    public Result<Book> removeBook(Campus campus, String id) {
+        return timed(Metrics.Op.REMOVE_BOOK, campus.getName(), () -> {
+            checkWritable();
+            Book book = campus.getCatalog().searchBook(id);
+            if (book == null) return Result.fail(Status.NOT_FOUND, "Book not found!");
+            campus.getCatalog().removeBook(id);
+            campus.getHolds().drop(id);
+            record(Journal.REMOVE_BOOK, campus.getName(), id);
+            return Result.ok(book);
+        });
+    }
+
+    public Result<Book> updateBook(Campus campus, String id, String title, String author, String category) {
+        return timed(Metrics.Op.UPDATE_BOOK, campus.getName(), () -> {
+            checkWritable();
+            Book book = campus.getCatalog().searchBook(id);
+            if (book == null) return Result.fail(Status.NOT_FOUND, "Book not found!");
+            if (isBlank(title)) return Result.fail(Status.INVALID, "Title cannot be empty!");
+            if (isBlank(author)) return Result.fail(Status.INVALID, "Author cannot be empty!");
+            if (isBlank(category)) return Result.fail(Status.INVALID, "Category cannot be empty!");
+            campus.getCatalog().updateBook(id, title.trim(), author.trim(), category.trim());
+            record(Journal.UPDATE_BOOK, campus.getName(), id, book.getTitle(), book.getAuthor(), book.getCategory());
+            return Result.ok(book);
+        });
+    }
+
+    public Book findBook(Campus campus, String id) {
+        long start = System.nanoTime();
+        Book book = campus.getCatalog().searchBook(id);
+        metrics.record(Metrics.Op.LOOKUP, campus.getName(), start, book != null);
+        return book;
+    }
+
+    public List<Book> searchBooks(Campus campus, String query, int limit) {
+        return timed(Metrics.Op.SEARCH, campus.getName(), () -> campus.getCatalog().search(query, limit));
+    }
+
+    // Searches every campus concurrently; results are keyed by campus in campus order.
+    public Map<Campus, List<Book>> searchAllCampuses(String query, int limitPerCampus) {
+        List<Future<List<Book>>> pending = new ArrayList<>();
+        for (Campus campus : campuses) pending.add(shardPool.submit(() -> searchBooks(campus, query, limitPerCampus)));
+        LinkedHashMap<Campus, List<Book>> results = new LinkedHashMap<>();
+        for (int i = 0; i < campuses.size(); i++) {
+            List<Book> books = await(pending.get(i));
+            if (!books.isEmpty()) results.put(campuses.get(i), books);
+        }
+        return results;
+    }
+
+    // Counts a call as failed when it throws or returns a failed Result.
+    private <T> T timed(Metrics.Op op, String campus, Supplier<T> action) {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            T result = action.get();
+            ok = !(result instanceof Result) || ((Result<?>) result).isOk();
+            return result;
+        } finally {
+            metrics.record(op, campus, start, ok);
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw new UncheckedIOException((IOException) cause);
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // ---------- listings ----------
+    // Cursor-paged views: pass null for the first page, then each page's `next` until it is null.
+    public Page<Book> listBooks(Campus campus, String cursor, int limit) {
+        return campus.getCatalog().page(cursor, limit);
+    }
+
+    public Page<Book> listAvailableBooks(Campus campus, String cursor, int limit) {
+        return campus.getCatalog().pageAvailable(cursor, limit);
+    }
+
+    public Page<Book> listBorrowedBooks(Campus campus, String cursor, int limit) {
+        return campus.getCatalog().pageBorrowed(cursor, limit);
+    }
+
+    public Page<Book> listBooksByCategory(Campus campus, String cursor, int limit) {
+        return campus.getCatalog().pageByCategory(cursor, limit);
+    }
+
+    public Page<Student> listStudents(Campus campus, String cursor, int limit) {
+        return campus.getStudents().page(cursor, limit);
+    }
+
+    public Page<Officer> listOfficers(Campus campus, String cursor, int limit) {
+        return campus.getOfficers().page(cursor, limit);
+    }
+
+    // ---------- circulation ----------
+    public Result<Date> borrowBook(Campus campus, Student student, String bookId) {
+        return timed(Metrics.Op.BORROW, campus.getName(), () -> {
+            checkWritable();
+            Book book = campus.getCatalog().searchBook(bookId);
+            Calendar cal = Calendar.getInstance();
+            Date borrowDate = cal.getTime();
+            cal.add(Calendar.DAY_OF_MONTH, LOAN_DAYS);
+            Date dueDate = cal.getTime();
+            switch (circulation.borrow(campus.getLoans(), campus.getHolds(), student, book, borrowDate.getTime(), dueDate.getTime())) {
+                case BORROWED: return Result.ok(dueDate);
+                case LIMIT_REACHED:
+                    return Result.fail(Status.LIMIT_REACHED,
+                        "You cannot borrow more than " + CirculationService.MAX_LOANS + " books!");
+                case ALREADY_BORROWED: return Result.fail(Status.DUPLICATE, "You already have a copy of this book!");
+                default: return Result.fail(Status.NOT_AVAILABLE, "Book not available!");
+            }
+        });
+    }
+
+    public Result<Book> returnBook(Campus campus, Student student, String bookId) {
+        return timed(Metrics.Op.RETURN, campus.getName(), () -> {
+            checkWritable();
+            Book book = campus.getCatalog().searchBook(bookId);
+            if (circulation.returnBook(campus.getLoans(), campus.getHolds(), student, book, System.currentTimeMillis())
+                    != CirculationService.Result.RETURNED) {
+                return Result.fail(Status.NOT_BORROWED, "Book is not borrowed by you!");
+            }
+            return Result.ok(book);
+        });
+    }
+
+    // Joins the queue for a book with no free copy; the result is the student's place in it.
+    public Result<Integer> placeHold(Campus campus, Student student, String bookId) {
+        return timed(Metrics.Op.HOLD, campus.getName(), () -> {
+            checkWritable();
+            Book book = campus.getCatalog().searchBook(bookId);
+            HoldTable holds = campus.getHolds();
+            switch (circulation.placeHold(campus.getLoans(), holds, student, book, System.currentTimeMillis())) {
+                case HELD: return Result.ok(holds.position(holds.find(student.id, bookId)));
+                case NOT_FOUND: return Result.fail(Status.NOT_FOUND, "Book not found!");
+                case AVAILABLE: return Result.fail(Status.INVALID, "A copy is available, borrow it instead!");
+                case ALREADY_BORROWED: return Result.fail(Status.DUPLICATE, "You already have a copy of this book!");
+                case ALREADY_HELD: return Result.fail(Status.DUPLICATE, "You already have a hold on this book!");
+                default:
+                    return Result.fail(Status.LIMIT_REACHED,
+                        "You cannot hold more than " + CirculationService.MAX_HOLDS + " books!");
+            }
+        });
+    }
+
+    public Result<Book> cancelHold(Campus campus, Student student, String bookId) {
+        return timed(Metrics.Op.HOLD, campus.getName(), () -> {
+            checkWritable();
+            Book book = campus.getCatalog().searchBook(bookId);
+            if (circulation.cancelHold(campus.getHolds(), student, book, System.currentTimeMillis())
+                    != CirculationService.Result.CANCELLED) {
+                return Result.fail(Status.NOT_FOUND, "You have no hold on this book!");
+            }
+            return Result.ok(book);
+        });
+    }
+
+    public List<Hold> getHolds(Campus campus, Student student) {
+        return campus.getHolds().forStudent(student.id);
+    }
+
+    // Passes copies whose pickup deadline has passed to the next hold; the overdue timer calls this.
+    public int expireHolds(long now) {
+        if (writer.getFailure() != null) return 0;
+        int expired = 0;
+        for (CampusShard shard : shards) {
+            Campus campus = shard.getCampus();
+            HoldTable holds = campus.getHolds();
+            for (Hold hold : holds.expired(now)) {
+                Book book = campus.getCatalog().searchBook(hold.bookId);
+                if (book == null) {
+                    holds.remove(hold);
+                } else if (circulation.expireHold(holds, book, hold, now)) {
+                    expired++;
+                }
+            }
+        }
+        return expired;
+    }
+
+    public List<Book> getLoanedBooks(Campus campus, Student student) {
+        List<Book> books = new ArrayList<>();
+        for (Loan loan : campus.getLoans().forStudent(student.id)) {
+            Book book = campus.getCatalog().searchBook(loan.bookId);
+            if (book != null) books.add(book);
+        }
+        return books;
+    }
+
+    // The students holding copies of a book, in copy order; empty if none is out.
+    public List<Student> getBorrowers(Campus campus, String bookId) {
+        List<Loan> loans = new ArrayList<>(campus.getLoans().forBook(bookId));
+        loans.sort(Comparator.comparingInt(l -> l.copy));
+        List<Student> students = new ArrayList<>(loans.size());
+        for (Loan loan : loans) {
+            Student student = campus.getStudents().get(loan.studentId);
+            if (student != null) students.add(student);
+        }
+        return students;
+    }
+
+    // ---------- users ----------
+    public Result<Officer> hireOfficer(Campus campus, String id, String name) {
+        checkWritable();
+        if (isBlank(id)) return Result.fail(Status.INVALID, "Officer ID cannot be empty!");
+        if (isBlank(name)) return Result.fail(Status.INVALID, "Officer name cannot be empty!");
+        Officer officer = new Officer(id.trim(), name.trim(), campus.getName());
+        if (!campus.getOfficers().add(officer)) return Result.fail(Status.DUPLICATE, "Officer ID already exists!");
+        record(Journal.HIRE_OFFICER, campus.getName(), officer.id, officer.name);
+        return Result.ok(officer);
+    }
+
+    public Result<Officer> fireOfficer(Campus campus, String id) {
+        checkWritable();
+        Officer officer = campus.getOfficers().remove(id);
+        if (officer == null) return Result.fail(Status.NOT_FOUND, "Officer not found!");
+        record(Journal.FIRE_OFFICER, campus.getName(), id);
+        return Result.ok(officer);
+    }
+
+    public Officer findOfficer(Campus campus, String id) {
+        return campus.getOfficers().get(id);
+    }
+
+    public Student findStudent(Campus campus, String id) {
+        return campus.getStudents().get(id);
+    }
+
+    // Like findOfficer/findStudent, but counted as login attempts in the metrics.
+    public Officer loginOfficer(Campus campus, String id) {
+        long start = System.nanoTime();
+        Officer officer = findOfficer(campus, id);
+        metrics.record(Metrics.Op.LOGIN, campus.getName(), start, officer != null);
+        return officer;
+    }
+
+    public Student loginStudent(Campus campus, String id) {
+        long start = System.nanoTime();
+        Student student = findStudent(campus, id);
+        metrics.record(Metrics.Op.LOGIN, campus.getName(), start, student != null);
+        return student;
+    }
+
+    public Result<Student> registerStudent(Campus campus, String id, String name) {
+        checkWritable();
+        if (isBlank(id)) return Result.fail(Status.INVALID, "Student ID cannot be empty!");
+        if (isBlank(name)) return Result.fail(Status.INVALID, "Name cannot be empty!");
+        Student student = new Student(id.trim(), name.trim(), campus.getName());
+        if (!campus.getStudents().add(student)) return Result.fail(Status.DUPLICATE, "Student already registered!");
+        record(Journal.REGISTER_STUDENT, campus.getName(), student.id, student.name);
+        return Result.ok(student);
+    }
+
+    public NotificationStore getNotifications(User user) { return user.getNotifications(); }
+
+    // Sends one notice to every matching student on a campus. All recipients share a single
+    // Notification and the whole broadcast is one journal record. Returns the recipient count.
+    public Result<Integer> broadcast(Campus campus, Officer officer, Audience audience, String category, String message) {
+        checkWritable();
+        if (isBlank(message)) return Result.fail(Status.INVALID, "Message cannot be empty!");
+        if (audience == Audience.CATEGORY && isBlank(category)) return Result.fail(Status.INVALID, "Category cannot be empty!");
+        String target = audience == Audience.CATEGORY ? category.trim() : "";
+        Notification notice = new Notification(System.currentTimeMillis(), Notification.Template.BROADCAST, officer.name, message.trim());
+        int sent = deliver(campus, notice, audience, target);
+        record(Journal.BROADCAST, campus.getName(), audience.name(), target, Long.toString(notice.time), officer.name, message.trim());
+        return Result.ok(sent);
+    }
+
+    // Fans out in batches on the shard pool; during replay the pool is busy replaying, so deliver inline.
+    private int deliver(Campus campus, Notification notice, Audience audience, String category) {
+        List<Student> students = campus.getStudents().list();
+        String folded = Catalog.fold(category);
+        List<Future<Integer>> pending = new ArrayList<>();
+        int sent = 0;
+        for (int from = 0; from < students.size(); from += BROADCAST_BATCH) {
+            List<Student> batch = students.subList(from, Math.min(students.size(), from + BROADCAST_BATCH));
+            Callable<Integer> task = () -> {
+                int count = 0;
+                for (Student student : batch) {
+                    if (isAudience(campus, student, audience, folded) && student.getNotifications().addIfAbsent(notice)) count++;
+                }
+                return count;
+            };
+            if (replaying) {
+                try {
+                    sent += task.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            } else {
+                pending.add(shardPool.submit(task));
+            }
+        }
+        for (Future<Integer> f : pending) sent += await(f);
+        return sent;
+    }
+
+    private static boolean isAudience(Campus campus, Student student, Audience audience, String category) {
+        if (audience == Audience.ALL) return true;
+        List<Loan> loans = campus.getLoans().forStudent(student.id);
+        if (audience == Audience.ACTIVE_LOANS) return !loans.isEmpty();
+        for (Loan loan : loans) {
+            Book book = campus.getCatalog().searchBook(loan.bookId);
+            if (book != null && Catalog.fold(book.getCategory()).equals(category)) return true;
+        }
+        return false;
+    }
+
+    // ---------- analytics ----------
+    // Borrowing on one campus, or all when campus is null, between two dates inclusive (null for
+    // open ends). Totals come from the campuses' running aggregates; only current overdue counts
+    // look at live loans.
+    public BorrowingAnalytics.Report borrowingReport(Campus campus, LocalDate from, LocalDate to, int topTitles) {
+        List<Campus> scope = campus == null ? getCampuses() : Collections.singletonList(campus);
+        BorrowingAnalytics.Report report = analytics.report(scope, from, to, topTitles);
+        long now = System.currentTimeMillis();
+        for (Campus c : scope) {
+            report.activeLoans += c.getLoans().size();
+            report.overdueLoans += overdue.overdue(c, now).size();
+        }
+        return report;
+    }
+
+    // ---------- due dates ----------
+    public List<Loan> getOverdueLoans(Campus campus) {
+        return overdue.overdue(campus, System.currentTimeMillis());
+    }
+
+    // Sends reminders and overdue notices that have come due; the timer calls this every minute.
+    public int sendDueNotices(long now) { return overdue.fire(now); }
+
+    public synchronized void startOverdueTimer() {
+        if (overdueTimer != null) return;
+        overdueTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "overdue-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        overdueTimer.scheduleAtFixedRate(() -> {
+            long now = System.currentTimeMillis();
+            expireHolds(now);
+            sendDueNotices(now);
+        }, 0, OVERDUE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // ---------- bulk transfer ----------
+    // Streams CSV rows (id,title,author,category[,campus[,copies]]) through a parse stage on a
+    // background thread and a validate/insert stage here, connected by a small bounded queue of
+    // batches. Rows bypass the journal; one checkpoint at the end makes the whole import durable,
+    // and an I/O failure removes every book the import added (see rollBack()). Automatic
+    // checkpoints wait meanwhile so no snapshot holds part of an import.
+    public ImportReport importBooks(Reader source, Campus defaultCampus) throws IOException {
+        writer.pauseCheckpoints();
+        try {
+            return importRows(source, defaultCampus);
+        } finally {
+            writer.resumeCheckpoints();
+        }
+    }
+
+    private ImportReport importRows(Reader source, Campus defaultCampus) throws IOException {
+        BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(IMPORT_QUEUE_BATCHES);
+        List<Object[]> end = new ArrayList<>();
+        IOException[] parseFailure = new IOException[1];
+        Thread parser = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(source, 1 << 16)) {
+                List<Object[]> batch = new ArrayList<>(IMPORT_BATCH);
+                long line = 0;
+                List<String> fields;
+                while ((fields = Csv.readRecord(in)) != null) {
+                    line++;
+                    if (line == 1) {
+                        // Excel and other Windows tools begin UTF-8 exports with a byte-order mark.
+                        if (fields.get(0).startsWith("\uFEFF")) fields.set(0, fields.get(0).substring(1));
+                        if (isHeader(fields)) continue;
+                    }
+                    batch.add(new Object[]{ line, fields });
+                    if (batch.size() == IMPORT_BATCH) {
+                        queue.put(batch);
+                        batch = new ArrayList<>(IMPORT_BATCH);
+                    }
+                }
+                if (!batch.isEmpty()) queue.put(batch);
+            } catch (IOException e) {
+                parseFailure[0] = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    queue.put(end);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "book-import-parser");
+        parser.setDaemon(true);
+        parser.start();
+
+        ImportReport report = new ImportReport();
+        Map<Campus, List<String>> added = new HashMap<>();
+        try {
+            List<Object[]> batch;
+            while ((batch = queue.take()) != end) {
+                for (Object[] row : batch) importRow((Long) row[0], (List<?>) row[1], defaultCampus, report, added);
+            }
+            if (parseFailure[0] != null) throw parseFailure[0];
+            for (Campus campus : added.keySet()) shardsByCampus.get(campus.getName()).checkpoint();
+        } catch (IOException | RuntimeException e) {
+            rollBack(added);
+            throw e;
+        } catch (InterruptedException e) {
+            rollBack(added);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } finally {
+            parser.interrupt();
+        }
+        return report;
+    }
+
+    // A header row names the columns in CSV_HEADER order, at least through category.
+    private static boolean isHeader(List<String> fields) {
+        if (fields.size() < 4 || fields.size() > CSV_HEADER.length) return false;
+        for (int i = 0; i < fields.size(); i++) {
+            if (!fields.get(i).trim().equalsIgnoreCase(CSV_HEADER[i])) return false;
+        }
+        return true;
+    }
+
+    // Every removal is journalled: a campus checkpointed before the failure, by this import or by
+    // an explicit save, has the books in its snapshot, and replaying a removal of a book that was
+    // never persisted does nothing.
+    private void rollBack(Map<Campus, List<String>> added) {
+        added.forEach((campus, ids) -> {
+            for (String id : ids) {
+                if (campus.getCatalog().removeBook(id)) record(Journal.REMOVE_BOOK, campus.getName(), id);
+            }
+        });
+    }
+
+    private void importRow(long line, List<?> fields, Campus defaultCampus, ImportReport report,
+            Map<Campus, List<String>> added) {
+        if (fields.size() < 4) {
+            report.reject(line, "expected id,title,author,category[,campus[,copies]]");
+            return;
+        }
+        String id = ((String) fields.get(0)).trim();
+        String title = ((String) fields.get(1)).trim();
+        String author = ((String) fields.get(2)).trim();
+        String category = ((String) fields.get(3)).trim();
+        String campusName = fields.size() > 4 ? ((String) fields.get(4)).trim() : "";
+        String copyCount = fields.size() > 5 ? ((String) fields.get(5)).trim() : "";
+        int copies = copyCount.matches("\\d{1,6}") ? Integer.parseInt(copyCount) : copyCount.isEmpty() ? 1 : 0;
+        Campus campus = campusName.isEmpty() ? defaultCampus : getCampus(campusName);
+        if (campus == null) {
+            report.reject(line, "unknown campus " + campusName);
+        } else if (copies < 1) {
+            report.reject(line, "invalid copy count " + copyCount);
+        } else if (id.isEmpty() || title.isEmpty() || author.isEmpty() || category.isEmpty()) {
+            report.reject(line, "ID, title, author and category cannot be empty");
+        } else if (campus.getCatalog().searchBook(id) != null) {
+            report.reject(line, "duplicate book ID " + id);
+        } else {
+            campus.getCatalog().addBook(new Book(id, title, author, category, campus.getName(), copies));
+            added.computeIfAbsent(campus, c -> new ArrayList<>()).add(id);
+            report.imported++;
+        }
+    }
+
+    // Streams books as CSV without faulting mapped catalogs into memory; campus null exports all campuses.
+    public int exportBooks(Writer target, Campus campus) throws IOException {
+        int[] count = new int[1];
+        IOException[] failure = new IOException[1];
+        try (BufferedWriter out = new BufferedWriter(target, 1 << 16)) {
+            Csv.writeRecord(out, CSV_HEADER);
+            for (Campus c : campus == null ? campuses : Collections.singletonList(campus)) {
+                c.getCatalog().forEachBook(b -> {
+                    if (failure[0] != null) return;
+                    try {
+                        Csv.writeRecord(out, b.getId(), b.getTitle(), b.getAuthor(), b.getCategory(), c.getName(),
+                            Integer.toString(b.getCopies()));
+                        count[0]++;
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) throw failure[0];
+            }
+        }
+        return count[0];
+    }
+
+    private static boolean isBlank(String value) { return value == null || value.trim().isEmpty(); }
+
+    // ---------- metrics ----------
+    public Metrics getMetrics() { return metrics; }
+
+    private long gauge(Metrics.Gauge gauge, String campusName) {
+        CampusShard shard = shardsByCampus.get(campusName);
+        if (shard == null) return 0;
+        Campus campus = shard.getCampus();
+        switch (gauge) {
+            case BOOKS: return campus.getCatalog().size();
+            case STUDENTS: return campus.getStudents().size();
+            case ACTIVE_LOANS: return campus.getLoans().size();
+            default:
+                long notifications = 0;
+                for (Student s : campus.getStudents()) notifications += s.getNotifications().size();
+                for (Officer o : campus.getOfficers()) notifications += o.getNotifications().size();
+                return notifications;
+        }
+    }
+
+    private List<String> campusNames() {
+        List<String> names = new ArrayList<>();
+        for (Campus campus : campuses) names.add(campus.getName());
+        return names;
+    }
+
+    public String metricsReport() { return metrics.report(campusNames()); }
+
+    public void registerMetricsMBeans() throws JMException { metrics.registerMBeans(campusNames()); }
+
+    // Rewrites file with the current report every intervalMillis (and once more on close).
+    public synchronized void startMetricsExport(File file, long intervalMillis) {
+        if (metricsTimer != null) return;
+        metricsTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-export");
+            t.setDaemon(true);
+            return t;
+        });
+        metricsTimer.scheduleAtFixedRate(() -> {
+            try {
+                metrics.writeTo(file, campusNames());
+            } catch (IOException e) {
+                // Try again next interval; metrics must never disturb the library itself.
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        metricsFile = file;
+    }
+
+    // ---------- persistence ----------
+    public void save() throws IOException {
+        forEachShard(timed(Metrics.Op.SAVE, CampusShard::save));
+    }
+
+    // Writes a snapshot of every shard and truncates the journals they now cover.
+    public void checkpoint() throws IOException {
+        forEachShard(timed(Metrics.Op.SAVE, CampusShard::checkpoint));
+    }
+
+    private ShardTask timed(Metrics.Op op, ShardTask task) {
+        return shard -> {
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                task.run(shard);
+                ok = true;
+            } finally {
+                metrics.record(op, shard.getCampus().getName(), start, ok);
+            }
+        };
+    }
+
+    // Completes once every operation performed before this call is durable.
+    public CompletableFuture<Void> whenDurable() {
+        return writer.whenDurable();
+    }
+
+    // Blocks until every operation performed so far is durable.
+    public void flush() throws IOException {
+        try {
+            whenDurable().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing the journal");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    public void close() throws IOException {
+        File export;
+        synchronized (this) {
+            if (overdueTimer != null) overdueTimer.shutdownNow();
+            overdueTimer = null;
+            if (metricsTimer != null) metricsTimer.shutdownNow();
+            metricsTimer = null;
+            export = metricsFile;
+        }
+        writer.stop();
+        try {
+            forEachShard(CampusShard::close);
+        } finally {
+            shardPool.shutdown();
+        }
+        if (export != null) metrics.writeTo(export, campusNames());
+    }
+
+    interface ShardTask {
+        void run(CampusShard shard) throws IOException;
+    }
+
+    // Runs a task on all shards in parallel and rethrows the first failure after all have finished.
+    private void forEachShard(ShardTask task) throws IOException {
+        List<Future<Object>> pending = new ArrayList<>();
+        for (CampusShard shard : shards) pending.add(shardPool.submit(() -> { task.run(shard); return null; }));
+        IOException failure = null;
+        for (Future<Object> f : pending) {
+            try {
+                await(f);
+            } catch (UncheckedIOException e) {
+                if (failure == null) failure = e.getCause();
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private CampusShard newShard(int index) {
+        String name = dataFile.getName();
+        int dot = name.lastIndexOf('.');
+        String base = new File(dataFile.getParentFile(), dot > 0 ? name.substring(0, dot) : name).getPath() + "." + index;
+        return new CampusShard(new File(base + ".dat"), new File(base + ".log"),
+            mappedStorage ? new File(base + ".books") : null);
+    }
+
+    // Loads every shard in parallel (snapshot plus journal tail). On first start after upgrading, a
+    // single pre-sharding data file and journal are split into shards and then removed.
+    // A shard whose live snapshot is damaged falls back to its newest good one; only a shard with no
+    // readable snapshot is reported, after the remaining shards are loaded and journals replayed.
+    public void load() throws IOException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            loadShards();
+            ok = true;
+        } finally {
+            metrics.record(Metrics.Op.LOAD, Metrics.ALL, start, ok);
+            overdue.rebuild(campuses);
+            writer.start();
+        }
+    }
+
+    private void loadShards() throws IOException {
+        shards.clear();
+        // A default campus whose shard was never written (nothing journalled or saved yet) must
+        // not end the scan, or the campuses after it and their journals would be skipped.
+        boolean found = false;
+        for (int i = 0; ; i++) {
+            CampusShard shard = newShard(i);
+            boolean present = shard.exists() || (i < DEFAULT_CAMPUSES.length && shard.getJournal().exists());
+            if (!present && i >= DEFAULT_CAMPUSES.length) break;
+            found |= present;
+            shards.add(shard);
+        }
+        if (!found) {
+            shards.clear();
+            if (dataFile.exists() || journalFile.exists()) {
+                migrateUnsharded();
+                return;
+            }
+            for (int i = 0; i < DEFAULT_CAMPUSES.length; i++) shards.add(newShard(i));
+        }
+
+        IOException failure = null;
+        try {
+            forEachShard(shard -> {
+                if (!shard.read()) shard.setCampus(new Campus(DEFAULT_CAMPUSES[shards.indexOf(shard)]));
+            });
+        } catch (IOException e) {
+            failure = e;
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            if (shards.get(i).getCampus() == null) shards.get(i).setCampus(new Campus(DEFAULT_CAMPUSES[i % DEFAULT_CAMPUSES.length]));
+        }
+        indexShards();
+        replaying = true;
+        try {
+            forEachShard(shard -> shard.replay(this::applyRecord));
+        } finally {
+            replaying = false;
+        }
+        if (failure != null) throw failure;
+    }
+
+    private void indexShards() {
+        campuses = new ArrayList<>();
+        shardsByCampus.clear();
+        for (CampusShard shard : shards) {
+            campuses.add(shard.getCampus());
+            shardsByCampus.put(shard.getCampus().getName(), shard);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void migrateUnsharded() throws IOException {
+        List<Campus> legacy = new ArrayList<>();
+        if (dataFile.exists()) {
+            try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(dataFile), 1 << 16)) {
+                in.mark(4);
+                boolean binary = new DataInputStream(in).readInt() == SnapshotCodec.MAGIC;
+                in.reset();
+                if (binary) {
+                    legacy = SnapshotCodec.read(new DataInputStream(in));
+                } else {
+                    // Data files written before the binary format are plain Java serialization.
+                    legacy = (ArrayList<Campus>) new ObjectInputStream(in).readObject();
+                }
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+        if (legacy.isEmpty()) {
+            for (String name : DEFAULT_CAMPUSES) legacy.add(new Campus(name));
+        }
+        for (int i = 0; i < legacy.size(); i++) {
+            CampusShard shard = newShard(i);
+            shard.setCampus(legacy.get(i));
+            shards.add(shard);
+        }
+        indexShards();
+        replaying = true;
+        try {
+            new Journal(journalFile).replay(this::applyRecord);
+        } finally {
+            replaying = false;
+        }
+        checkpoint();
+        Files.deleteIfExists(dataFile.toPath());
+        Files.deleteIfExists(journalFile.toPath());
+    }
+
+    // Fails every mutation while journal commits are failing, so callers notice a full disk. It runs
+    // before anything changes in memory: by the time record() is called the change is made and the
+    // other listeners still have to see it.
+    private void checkWritable() {
+        IOException failure = writer.getFailure();
+        if (failure != null) throw new UncheckedIOException(failure);
+    }
+
+    // Buffers one mutation in its campus's journal for the next group commit; the writer thread
+    // folds each shard's log into a snapshot once it is long enough.
+    private void record(byte op, String... fields) {
+        if (replaying) return;
+        CampusShard shard = shardsByCampus.get(fields[0]);
+        try {
+            shard.append(op, fields);
+            writer.appended();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Replay is idempotent so a crash between writing a snapshot and truncating the log is harmless.
+    private void applyRecord(byte op, String[] f) {
+        Campus campus = getCampus(f[0]);
+        if (campus == null) return;
+        Catalog catalog = campus.getCatalog();
+        switch (op) {
+            case Journal.ADD_BOOK:
+                if (catalog.searchBook(f[1]) == null) {
+                    catalog.addBook(new Book(f[1], f[2], f[3], f[4], campus.getName(), f.length > 5 ? Integer.parseInt(f[5]) : 1));
+                }
+                break;
+            case Journal.REMOVE_BOOK:
+                catalog.removeBook(f[1]);
+                campus.getHolds().drop(f[1]);
+                break;
+            case Journal.UPDATE_BOOK:
+                catalog.updateBook(f[1], f[2], f[3], f[4]);
+                break;
+            case Journal.BORROW_BOOK: {
+                Student student = findStudent(campus, f[1]);
+                Book book = catalog.searchBook(f[2]);
+                // Records written before copies existed name no copy; those books had only one.
+                int copy = f.length > 5 ? Integer.parseInt(f[5]) : 0;
+                if (circulation.borrow(campus.getLoans(), campus.getHolds(), student, book, copy, Long.parseLong(f[3]), Long.parseLong(f[4]))
+                        == CirculationService.Result.BORROWED) {
+                    Loan loan = campus.getLoans().find(student.id, book.getId());
+                    analytics.borrowed(student, book, loan, f.length > 6 ? Long.parseLong(f[6]) : 0);
+                }
+                break;
+            }
+            case Journal.RETURN_BOOK: {
+                Student student = findStudent(campus, f[1]);
+                Book book = catalog.searchBook(f[2]);
+                Loan loan = student == null || book == null ? null : campus.getLoans().find(student.id, book.getId());
+                // Records written before holds existed carry no time; nothing could be waiting then.
+                long returnedAt = f.length > 3 ? Long.parseLong(f[3]) : 0;
+                if (circulation.returnBook(campus.getLoans(), campus.getHolds(), student, book, returnedAt)
+                        == CirculationService.Result.RETURNED) {
+                    analytics.returned(student, loan, returnedAt, f.length > 4 ? Long.parseLong(f[4]) : 0);
+                }
+                break;
+            }
+            case Journal.SET_COPIES: {
+                Book book = catalog.searchBook(f[1]);
+                long at = f.length > 3 ? Long.parseLong(f[3]) : 0;
+                if (book != null) circulation.setCopies(campus.getHolds(), book, Integer.parseInt(f[2]), at);
+                break;
+            }
+            case Journal.PLACE_HOLD:
+                circulation.placeHold(campus.getLoans(), campus.getHolds(), findStudent(campus, f[1]),
+                    catalog.searchBook(f[2]), Long.parseLong(f[3]));
+                break;
+            case Journal.CANCEL_HOLD:
+                circulation.cancelHold(campus.getHolds(), findStudent(campus, f[1]), catalog.searchBook(f[2]), Long.parseLong(f[3]));
+                break;
+            case Journal.EXPIRE_HOLD: {
+                Hold hold = campus.getHolds().find(f[1], f[2]);
+                Book book = catalog.searchBook(f[2]);
+                if (hold != null && book != null) circulation.expireHold(campus.getHolds(), book, hold, Long.parseLong(f[3]));
+                break;
+            }
+            case Journal.HIRE_OFFICER:
+                campus.getOfficers().add(new Officer(f[1], f[2], campus.getName()));
+                break;
+            case Journal.FIRE_OFFICER:
+                campus.getOfficers().remove(f[1]);
+                break;
+            case Journal.REGISTER_STUDENT:
+                campus.getStudents().add(new Student(f[1], f[2], campus.getName()));
+                break;
+            case Journal.BROADCAST:
+                deliver(campus, new Notification(Long.parseLong(f[3]), Notification.Template.BROADCAST, f[4], f[5]),
+                    Audience.valueOf(f[1]), f[2]);
+                break;
+        }
+    }
+}
+
+// Embedded HTTP/JSON endpoint so many kiosks can share one process. A student logs in once and
+// sends the returned token in an X-Session header. Requests run on virtual threads where the runtime
+// has them and on a fixed pool otherwise; every request goes through LibraryService, whose catalog
+// lock, registry and student monitors and circulation stripes keep concurrent requests consistent.
+//
+//   GET  /api/campuses
+//   GET  /api/books?campus=Main&q=calculus&limit=20
+//   POST /api/login           campus=Main&id=S1
+//   POST /api/logout
+//   GET  /api/loans
+//   POST /api/borrow          book=B1
+//   POST /api/return          book=B1
+//   GET  /api/notifications?offset=0&limit=10
+// POST parameters may come in the query string or a form-encoded body. Run the JVM with
+// -Dsun.net.httpserver.nodelay=true (the main class's serve() sets it): the JDK server writes headers
+// and body separately, so without TCP_NODELAY each response waits out the client's delayed ACK.
+final class LibraryServer {
+    static final Logger LOG = Logger.getLogger(LibraryServer.class.getName());
+    static final int DEFAULT_THREADS = 200;
+    static final int DEFAULT_LIMIT = 20;
+    static final int MAX_LIMIT = 100;
+    static final long SESSION_IDLE_MS = 30L * 60 * 1000;
+    private static final int MAX_BODY = 8192;
+
+    private final LibraryService library;
+    private final HttpServer server;
+    private final ExecutorService requests;
+    private final ScheduledExecutorService sweeper;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    private static final class Session {
+        final Campus campus;
+        final Student student;
+        volatile long lastUsed;
+
+        Session(Campus campus, Student student, long now) {
+            this.campus = campus;
+            this.student = student;
+            this.lastUsed = now;
+        }
+    }
+
+    // A rejected request: the HTTP status and the message sent back as {"error": ...}.
+    private static final class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        Failure(int status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    LibraryServer(LibraryService library, InetSocketAddress address, int threads) throws IOException {
+        this.library = library;
+        this.server = HttpServer.create(address, 0);
+        this.requests = newRequestExecutor(threads);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(requests);
+        server.createContext("/api/", this::handle);
+    }
+
+    // Virtual threads arrived in Java 21 and this build targets 17, so the factory is looked up at
+    // run time; older runtimes get a fixed pool of platform threads.
+    static ExecutorService newRequestExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "http-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public void start() {
+        server.start();
+        sweeper.scheduleAtFixedRate(() -> {
+            long cutoff = System.currentTimeMillis() - SESSION_IDLE_MS;
+            sessions.values().removeIf(s -> s.lastUsed < cutoff);
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    // Lets requests in progress finish for up to a second.
+    public void stop() {
+        server.stop(1);
+        sweeper.shutdownNow();
+        requests.shutdown();
+    }
+
+    public InetSocketAddress getAddress() { return server.getAddress(); }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            Map<String, String> params = params(exchange);
+            String path = exchange.getRequestURI().getPath();
+            boolean post = "POST".equals(exchange.getRequestMethod());
+            switch (path) {
+                case "/api/campuses": body = campuses(); break;
+                case "/api/books": body = books(params); break;
+                case "/api/login": requirePost(post); body = login(params); break;
+                case "/api/logout": requirePost(post); body = logout(exchange); break;
+                case "/api/loans": body = loans(session(exchange)); break;
+                case "/api/borrow": requirePost(post); body = borrow(session(exchange), params); break;
+                case "/api/return": requirePost(post); body = giveBack(session(exchange), params); break;
+                case "/api/notifications": body = notifications(session(exchange), params); break;
+                default: throw new Failure(404, "No such endpoint");
+            }
+        } catch (Failure f) {
+            status = f.status;
+            body = error(f.getMessage());
+        } catch (UncheckedIOException e) {
+            // The journal cannot be written; refuse rather than acknowledge what may not survive.
+            log(exchange, e);
+            status = 503;
+            body = error("Storage unavailable");
+        } catch (RuntimeException e) {
+            log(exchange, e);
+            status = 500;
+            body = error("Internal error");
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
 
-    public Book(String id, String title, String author, String category, String campus) {
-        this.id = id;
-        this.title = title;
-        this.author = author;
-        this.category = category;
-        this.campus = campus;
-        this.available = true;
+    // The details go to the server's log only; kiosks just learn that the request failed.
+    private static void log(HttpExchange exchange, Throwable e) {
+        LOG.log(Level.SEVERE, exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " failed", e);
     }
 
-    public String getId() { return id; }
-    public String getTitle() { return title; }
-    public String getAuthor() { return author; }
-    public String getCategory() { return category; }
-    public boolean isAvailable() { return available; }
-    public String getCampus() { return campus; }
-    
-    public void setAvailable(boolean available) { this.available = available; }
-    public void updateDetails(String title, String author, String category) {
-        this.title = title;
-        this.author = author;
-        this.category = category;
+    // ---------- endpoints ----------
+    private String campuses() {
+        StringBuilder sb = new StringBuilder("{\"campuses\":[");
+        List<Campus> campuses = library.getCampuses();
+        for (int i = 0; i < campuses.size(); i++) {
+            if (i > 0) sb.append(',');
+            quote(sb, campuses.get(i).getName());
+        }
+        return sb.append("]}").toString();
     }
 
-    @Override
-    public String toString() {
-        return String.format("id=%s, title=%s, author=%s, category=%s - %s",
-            id, title, author, category, available ? "Available" : "Borrowed");
+    private String books(Map<String, String> params) {
+        Campus campus = campus(params.get("campus"));
+        String query = required(params, "q");
+        StringBuilder sb = new StringBuilder("{\"books\":[");
+        List<Book> found = library.searchBooks(campus, query, limit(params));
+        for (int i = 0; i < found.size(); i++) {
+            if (i > 0) sb.append(',');
+            book(sb, found.get(i));
+        }
+        return sb.append("]}").toString();
     }
-}
 
-class Catalog implements Serializable {
-    private static final long serialVersionUID = 1L;
-    private ArrayList<Book> books = new ArrayList<>();
+    private String login(Map<String, String> params) {
+        Campus campus = campus(params.get("campus"));
+        Student student = library.loginStudent(campus, required(params, "id"));
+        if (student == null) throw new Failure(401, "Invalid student ID!");
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(32);
+        for (byte b : bytes) token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        sessions.put(token.toString(), new Session(campus, student, System.currentTimeMillis()));
+        StringBuilder sb = new StringBuilder("{\"token\":");
+        quote(sb, token.toString()).append(",\"id\":");
+        quote(sb, student.id).append(",\"name\":");
+        quote(sb, student.name).append(",\"campus\":");
+        quote(sb, campus.getName()).append(",\"unread\":").append(student.getNotifications().unreadCount());
+        return sb.append('}').toString();
+    }
 
-    public void addBook(Book book) { books.add(book); }
-    public boolean removeBook(String id) { return books.removeIf(b -> b.getId().equals(id)); }
-    public Book searchBook(String id) { 
-        return books.stream()
-            .filter(b -> b.getId().equals(id))
-            .findFirst()
-            .orElse(null);
+    private String logout(HttpExchange exchange) {
+        String token = exchange.getRequestHeaders().getFirst("X-Session");
+        if (token == null || sessions.remove(token) == null) throw new Failure(401, "Not logged in");
+        return "{}";
     }
-    public ArrayList<Book> getAllBooks() { return books; }
-    public void updateBook(String id, String title, String author, String category) {
-        Book book = searchBook(id);
-        if(book != null) book.updateDetails(title, author, category);
+
+    private String loans(Session session) {
+        StringBuilder sb = new StringBuilder("{\"loans\":[");
+        List<Loan> loans = session.campus.getLoans().forStudent(session.student.id);
+        for (int i = 0; i < loans.size(); i++) {
+            Loan loan = loans.get(i);
+            Book book = session.campus.getCatalog().searchBook(loan.bookId);
+            if (i > 0) sb.append(',');
+            sb.append("{\"book\":");
+            quote(sb, loan.bookId).append(",\"title\":");
+            quote(sb, book == null ? "" : book.getTitle()).append(",\"copy\":").append(loan.copy).append(",\"due\":");
+            quote(sb, OverdueTracker.DUE_DATE.format(Instant.ofEpochMilli(loan.dueAt))).append('}');
+        }
+        return sb.append("]}").toString();
     }
-}
 
-abstract class User implements Serializable {
-    private static final long serialVersionUID = 1L;
-    protected String id;
-    protected String name;
-    protected String campus;
-    protected ArrayList<String> notifications = new ArrayList<>();
+    private String borrow(Session session, Map<String, String> params) {
+        String bookId = required(params, "book");
+        LibraryService.Result<Date> result = library.borrowBook(session.campus, session.student, bookId);
+        check(result);
+        StringBuilder sb = new StringBuilder("{\"book\":");
+        quote(sb, bookId).append(",\"due\":");
+        return quote(sb, OverdueTracker.DUE_DATE.format(result.value.toInstant())).append('}').toString();
+    }
 
-    public User(String id, String name, String campus) {
-        this.id = id;
-        this.name = name;
-        this.campus = campus;
+    private String giveBack(Session session, Map<String, String> params) {
+        String bookId = required(params, "book");
+        check(library.returnBook(session.campus, session.student, bookId));
+        StringBuilder sb = new StringBuilder("{\"book\":");
+        return quote(sb, bookId).append('}').toString();
     }
 
-    public void addNotification(String message) {
-        notifications.add(new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date()) + " - " + message);
+    private String notifications(Session session, Map<String, String> params) {
+        int offset = Math.max(0, intParam(params, "offset", 0));
+        NotificationStore store = library.getNotifications(session.student);
+        NotificationStore.View page = store.read(offset, limit(params));
+        StringBuilder sb = new StringBuilder("{\"total\":").append(store.size()).append(",\"notifications\":[");
+        for (int i = 0; i < page.entries.size(); i++) {
+            Notification n = page.entries.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"time\":").append(n.time).append(",\"unread\":").append(page.unread[i]).append(",\"message\":");
+            quote(sb, n.getMessage()).append('}');
+        }
+        return sb.append("]}").toString();
     }
-    
-    public void showNotifications() {
-        if(notifications.isEmpty()) {
-            JOptionPane.showMessageDialog(null, "===== NOTIFICATIONS ====\nNo new notifications\n========================");
-            return;
+
+    // ---------- helpers ----------
+    private Session session(HttpExchange exchange) {
+        String token = exchange.getRequestHeaders().getFirst("X-Session");
+        Session session = token == null ? null : sessions.get(token);
+        long now = System.currentTimeMillis();
+        if (session == null || session.lastUsed < now - SESSION_IDLE_MS) throw new Failure(401, "Not logged in");
+        session.lastUsed = now;
+        return session;
+    }
+
+    private Campus campus(String name) {
+        Campus campus = name == null ? null : library.getCampus(name);
+        if (campus == null) throw new Failure(404, "Unknown campus: " + name);
+        return campus;
+    }
+
+    private static void check(LibraryService.Result<?> result) {
+        if (result.isOk()) return;
+        switch (result.status) {
+            case INVALID: throw new Failure(400, result.message);
+            case NOT_FOUND: throw new Failure(404, result.message);
+            default: throw new Failure(409, result.message);
         }
-        StringBuilder sb = new StringBuilder("===== NOTIFICATIONS =====\n");
-        notifications.forEach(n -> sb.append(n).append("\n"));
-        sb.append("========================");
-        JOptionPane.showMessageDialog(null, sb.toString());
     }
-}
 
-class Student extends User {
-    private static final long serialVersionUID = 1L;
-    private HashMap<Book, Date[]> borrowedBooks = new HashMap<>();
+    private static void requirePost(boolean post) {
+        if (!post) throw new Failure(405, "Use POST");
+    }
 
-    public Student(String id, String name, String campus) {
-        super(id, name, campus);
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.trim().isEmpty()) throw new Failure(400, "Missing parameter: " + name);
+        return value;
+    }
+
+    private static int limit(Map<String, String> params) {
+        return Math.max(1, Math.min(MAX_LIMIT, intParam(params, "limit", DEFAULT_LIMIT)));
     }
 
-    public void borrowBook(Book book, Date dueDate) {
-        if(borrowedBooks.size() < 5 && book != null && book.isAvailable()) {
-            borrowedBooks.put(book, new Date[]{new Date(), dueDate});
-            book.setAvailable(false);
-            addNotification("Borrowed book: " + book.getTitle());
+    private static int intParam(Map<String, String> params, String name, int fallback) {
+        String value = params.get(name);
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new Failure(400, "Not a number: " + name);
         }
     }
 
-    public void returnBook(Book book) {
-        Date[] dates = borrowedBooks.remove(book);
-        if(dates != null) {
-            book.setAvailable(true);
+    private static Map<String, String> params(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY + 1);
+            if (body.length > MAX_BODY) throw new Failure(413, "Request body too large");
+            if (body.length > 0) parseForm(new String(body, StandardCharsets.UTF_8), params);
         }
+        return params;
     }
 
-    public HashMap<Book, Date[]> getBorrowedBooks() { return borrowedBooks; }
-}
+    private static void parseForm(String form, Map<String, String> into) {
+        if (form == null || form.isEmpty()) return;
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            try {
+                into.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new Failure(400, "Malformed parameters");
+            }
+        }
+    }
 
-class Officer extends User {
-    private static final long serialVersionUID = 1L;
-    public Officer(String id, String name, String campus) {
-        super(id, name, campus);
+    private static void book(StringBuilder sb, Book book) {
+        sb.append("{\"id\":");
+        quote(sb, book.getId()).append(",\"title\":");
+        quote(sb, book.getTitle()).append(",\"author\":");
+        quote(sb, book.getAuthor()).append(",\"category\":");
+        quote(sb, book.getCategory()).append(",\"copies\":").append(book.getCopies())
+            .append(",\"available\":").append(book.getAvailableCopies()).append('}');
     }
 
-    public void sendNotification(Student student, String message) {
-        student.addNotification(message);
+    private static String error(String message) {
+        return quote(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+    static StringBuilder quote(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"');
     }
 }
 
 public class LIBRARY_MANAGEMENT_SYSTEM {
-    private static ArrayList<Campus> campuses = new ArrayList<>();
     private static final String ADMIN_PASSWORD = "micky";
     private static final String DATA_FILE = "library_data.dat";
+    private static final String JOURNAL_FILE = "library_data.log";
+    private static final int SEARCH_RESULT_LIMIT = 50;
+    private static final int NOTIFICATION_PAGE_SIZE = 10;
+    private static final int LIST_PAGE_SIZE = 50;
+    private static final int REPORT_TOP_TITLES = 10;
+    private static final int REPORT_DAYS_SHOWN = 14;
+    // -Dlibrary.mappedStorage=true keeps each campus catalog in a memory-mapped file next to its shard.
+    private static final boolean MAPPED_STORAGE = Boolean.getBoolean("library.mappedStorage");
+    // -Dlibrary.metricsFile=<path> rewrites a metrics report there every minute and on exit;
+    // -Dlibrary.jmx=true publishes the same metrics as MBeans under com.mycompany.library.
+    private static final long METRICS_EXPORT_INTERVAL_MS = 60_000;
+    // -Dlibrary.commitBatch / -Dlibrary.commitIntervalMs tune journal group commit.
+    private static final LibraryService library = new LibraryService(new File(DATA_FILE), new File(JOURNAL_FILE),
+        MAPPED_STORAGE, Integer.getInteger("library.commitBatch", LibraryService.DEFAULT_COMMIT_BATCH),
+        Long.getLong("library.commitIntervalMs", LibraryService.DEFAULT_COMMIT_INTERVAL_MS));
 
+    // -Dlibrary.httpPort=<port> runs the HTTP/JSON kiosk server instead of the Swing client;
+    // -Dlibrary.httpHost (loopback by default) and -Dlibrary.httpThreads tune it.
     public static void main(String[] args) {
-        loadData();
-        if (campuses.isEmpty()) initializeCampuses();
+        Integer httpPort = Integer.getInteger("library.httpPort");
+        if (httpPort != null) {
+            serve(httpPort);
+            return;
+        }
+        loadData(LIBRARY_MANAGEMENT_SYSTEM::showError);
         while(true) {
             Campus selectedCampus = selectCampus();
             if (selectedCampus == null) {
                 int confirm = JOptionPane.showConfirmDialog(null, 
                     "Are you sure you want to exit?", "Exit", JOptionPane.YES_NO_OPTION);
-                if (confirm == JOptionPane.YES_OPTION) {
-                    saveData();
-                    System.exit(0);
-                }
+                if (confirm == JOptionPane.YES_OPTION) exit();
             } else {
                 mainMenu(selectedCampus);
             }
         }
     }
 
-    private static void initializeCampuses() {
-        campuses.add(new Campus("Atse Tewodros Campus"));
-        campuses.add(new Campus("GC Campus"));
-        campuses.add(new Campus("Maraki Campus"));
-        campuses.add(new Campus("Fasil Campus"));
-        campuses.add(new Campus("Teda Campus"));
-    }
-
     private static void mainMenu(Campus campus) {
         while (true) {
             String choice = JOptionPane.showInputDialog(
@@ -192,7 +4663,7 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
             if (choice == null) {
                 int confirm = JOptionPane.showConfirmDialog(null, 
                     "Are you sure you want to exit?", "Exit", JOptionPane.YES_NO_OPTION);
-                if (confirm == JOptionPane.YES_OPTION) System.exit(0);
+                if (confirm == JOptionPane.YES_OPTION) exit();
                 else continue;
             }
             switch (choice) {
@@ -209,7 +4680,10 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
     private static void adminLogin(Campus campus) {
         String password = JOptionPane.showInputDialog("Enter admin password:");
         if (password == null) return;
-        if (!ADMIN_PASSWORD.equals(password)) {
+        long start = System.nanoTime();
+        boolean ok = ADMIN_PASSWORD.equals(password);
+        library.getMetrics().record(Metrics.Op.LOGIN, campus.getName(), start, ok);
+        if (!ok) {
             showError("Invalid password!");
             return;
         }
@@ -221,7 +4695,7 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
             String choice = JOptionPane.showInputDialog(
                 "===== ADMINISTRATOR DASHBOARD =====\n" +
                 "Campus: " + campus.getName() + "\n" +
-                "1. Manage Books\n2. Manage Officers\n3. Manage Students\n4. Exit\n" +
+                "1. Manage Books\n2. Manage Officers\n3. Manage Students\n4. Borrowing Reports\n5. Exit\n" +
                 "==================================="
             );
             if (choice == null) return;
@@ -229,19 +4703,80 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                 case "1": manageBooks(campus); break;
                 case "2": manageOfficers(campus); break;
                 case "3": manageStudents(campus); break;
-                case "4": return;
+                case "4": showBorrowingReport(campus); break;
+                case "5": return;
                 default: showError("Invalid choice!");
             }
         }
     }
 
+    private static void showBorrowingReport(Campus campus) {
+        Object[] scopes = {campus.getName(), "All Campuses"};
+        int scope = JOptionPane.showOptionDialog(null, "Report on:", "Borrowing Reports",
+            JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, scopes, scopes[0]);
+        if (scope < 0) return;
+        String input = JOptionPane.showInputDialog("Number of days to cover (blank for all history):", "30");
+        if (input == null) return;
+        LocalDate from = null;
+        LocalDate to = LocalDate.now();
+        if (!input.trim().isEmpty()) {
+            try {
+                int days = Integer.parseInt(input.trim());
+                if (days < 1) throw new NumberFormatException();
+                from = to.minusDays(days - 1);
+            } catch (NumberFormatException e) {
+                showError("Please enter a positive number of days!");
+                return;
+            }
+        }
+        BorrowingAnalytics.Report report = library.borrowingReport(scope == 0 ? campus : null, from, to, REPORT_TOP_TITLES);
+
+        StringBuilder sb = new StringBuilder("===== BORROWING REPORT =====\n");
+        sb.append(scope == 0 ? campus.getName() : "All campuses").append(", ")
+          .append(from == null ? "all history" : from + " to " + to).append("\n\n");
+        sb.append("Loans: ").append(report.borrows).append("   Returns: ").append(report.returns).append("\n");
+        sb.append(String.format("Average loan: %.1f days   Returned late: %.1f%%%n",
+            report.averageLoanDays(), report.lateReturnRate() * 100));
+        sb.append(String.format("Out now: %d   Overdue now: %d (%.1f%%)%n",
+            report.activeLoans, report.overdueLoans, report.overdueRate() * 100));
+        if (scope != 0) {
+            sb.append("\nLoans per campus:\n");
+            report.byCampus.forEach((name, n) -> sb.append("  ").append(name).append(": ").append(n).append("\n"));
+        }
+        if (!report.byCategory.isEmpty()) {
+            sb.append("\nLoans per category:\n");
+            report.byCategory.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(e -> sb.append("  ").append(e.getKey()).append(": ").append(e.getValue()).append("\n"));
+        }
+        if (!report.byDay.isEmpty()) {
+            sb.append("\nLoans / returns per day");
+            if (report.byDay.size() > REPORT_DAYS_SHOWN) sb.append(" (last ").append(REPORT_DAYS_SHOWN).append(" active days)");
+            sb.append(":\n");
+            report.byDay.descendingMap().entrySet().stream().limit(REPORT_DAYS_SHOWN)
+                .forEach(e -> sb.append("  ").append(e.getKey()).append(": ").append(e.getValue()[0])
+                    .append(" / ").append(e.getValue()[1]).append("\n"));
+        }
+        if (!report.topTitles.isEmpty()) {
+            sb.append("\nMost borrowed titles (all time):\n");
+            for (BorrowingAnalytics.TitleCount t : report.topTitles) {
+                sb.append("  ").append(t.borrows).append("  ").append(t.title).append(" (").append(t.bookId);
+                if (scope != 0) sb.append(", ").append(t.campus);
+                sb.append(")\n");
+            }
+        }
+        sb.append("============================");
+        JOptionPane.showMessageDialog(null, sb.toString());
+    }
+
     private static void manageBooks(Campus campus) {
         while (true) {
             String choice = JOptionPane.showInputDialog(
                 "===== BOOK MANAGEMENT =====" +
                 "\nCampus: " + campus.getName() +
                 "\n1. Add Book\n2. Remove Book\n3. Update Book" +
-                "\n4. Search Book\n5. Show All Books\n6. Back\n" +
+                "\n4. Search Book\n5. Show All Books\n6. Import Books (CSV)" +
+                "\n7. Export Books (CSV)\n8. Set Copies\n9. Back\n" +
                 "==========================="
             );
             if (choice == null) return;
@@ -251,7 +4786,10 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                 case "3": updateBook(campus); break;
                 case "4": searchBookAdmin(campus); break;
                 case "5": showAllBooks(campus); break;
-                case "6": return;
+                case "6": importBooks(campus); break;
+                case "7": exportBooks(campus); break;
+                case "8": setCopies(campus); break;
+                case "9": return;
                 default: showError("Invalid choice!");
             }
         }
@@ -264,9 +4802,8 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                 showError("Book ID cannot be empty!");
                 return;
             }
-            id = id.trim();
             
-            if (campus.getCatalog().searchBook(id) != null) {
+            if (library.findBook(campus, id.trim()) != null) {
                 showError("A book with this ID already exists!");
                 return;
             }
@@ -289,27 +4826,63 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                 return;
             }
             
-            campus.getCatalog().addBook(new Book(id, title.trim(), author.trim(), category.trim(), campus.getName()));
-            saveData();
+            String copies = JOptionPane.showInputDialog("Number of copies:", "1");
+            if (copies == null) return;
+            
+            LibraryService.Result<Book> result = library.addBook(campus, id, title, author, category, parseCopies(copies));
+            if (!result.isOk()) {
+                showError(result.message);
+                return;
+            }
             JOptionPane.showMessageDialog(null, "Book added successfully!");
         } catch (Exception e) {
             showError("Error adding book: " + e.getMessage());
         }
     }
 
-    private static void removeBook(Campus campus) {
+    private static void setCopies(Campus campus) {
         try {
-            String id = JOptionPane.showInputDialog("Enter book ID to remove:");
+            String id = JOptionPane.showInputDialog("Enter book ID:");
             if (id == null) return;
             
-            Book book = campus.getCatalog().searchBook(id);
+            Book book = library.findBook(campus, id);
             if (book == null) {
                 showError("Book not found!");
                 return;
             }
             
-            campus.getCatalog().removeBook(id);
-            saveData();
+            String copies = JOptionPane.showInputDialog(
+                book.getTitle() + "\n" + book.getAvailableCopies() + " of " + book.getCopies() + " copies available" +
+                "\nNew number of copies:", String.valueOf(book.getCopies()));
+            if (copies == null) return;
+            
+            LibraryService.Result<Book> result = library.setCopies(campus, id, parseCopies(copies));
+            if (!result.isOk()) {
+                showError(result.message);
+                return;
+            }
+            JOptionPane.showMessageDialog(null, "Copies updated successfully!");
+        } catch (Exception e) {
+            showError("Error updating copies: " + e.getMessage());
+        }
+    }
+
+    // Anything that is not a positive number is passed on as 0 and rejected by the service.
+    private static int parseCopies(String input) {
+        String trimmed = input.trim();
+        return trimmed.matches("\\d{1,6}") ? Integer.parseInt(trimmed) : 0;
+    }
+
+    private static void removeBook(Campus campus) {
+        try {
+            String id = JOptionPane.showInputDialog("Enter book ID to remove:");
+            if (id == null) return;
+            
+            LibraryService.Result<Book> result = library.removeBook(campus, id);
+            if (!result.isOk()) {
+                showError(result.message);
+                return;
+            }
             JOptionPane.showMessageDialog(null, "Book removed successfully!");
         } catch (Exception e) {
             showError("Error removing book: " + e.getMessage());
@@ -321,7 +4894,7 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
             String id = JOptionPane.showInputDialog("Enter book ID to update:");
             if (id == null) return;
             
-            Book book = campus.getCatalog().searchBook(id);
+            Book book = library.findBook(campus, id);
             if (book == null) {
                 showError("Book not found!");
                 return;
@@ -345,8 +4918,11 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                 return;
             }
             
-            campus.getCatalog().updateBook(id, title.trim(), author.trim(), category.trim());
-            saveData();
+            LibraryService.Result<Book> result = library.updateBook(campus, id, title, author, category);
+            if (!result.isOk()) {
+                showError(result.message);
+                return;
+            }
             JOptionPane.showMessageDialog(null, "Book updated successfully!");
         } catch (Exception e) {
             showError("Error updating book: " + e.getMessage());
@@ -355,14 +4931,10 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
 
     private static void searchBookAdmin(Campus campus) {
         try {
-            String input = JOptionPane.showInputDialog("Enter book ID, title, or category:");
+            String input = JOptionPane.showInputDialog("Enter book ID, title, author, or category:");
             if (input == null) return;
             
-            List<Book> results = campus.getCatalog().getAllBooks().stream()
-                .filter(b -> b.getId().equals(input) || 
-                           b.getTitle().equalsIgnoreCase(input) || 
-                           b.getCategory().equalsIgnoreCase(input))
-                .collect(Collectors.toList());
+            List<Book> results = library.searchBooks(campus, input, SEARCH_RESULT_LIMIT);
             
             if (results.isEmpty()) {
                 showError("No books found!");
@@ -377,13 +4949,45 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
         }
     }
 
-    private static void showAllBooks(Campus campus) {
+    private static void importBooks(Campus campus) {
         try {
-            StringBuilder sb = new StringBuilder("===== ALL BOOKS =====\n");
-            campus.getCatalog().getAllBooks().forEach(b -> 
-                sb.append(b.toString()).append("\n"));
-            sb.append("=====================");
+            String path = JOptionPane.showInputDialog(
+                "Enter CSV file to import (id,title,author,category[,campus[,copies]]):");
+            if (path == null || path.trim().isEmpty()) return;
+            
+            LibraryService.ImportReport report;
+            try (Reader in = new InputStreamReader(new FileInputStream(path.trim()), StandardCharsets.UTF_8)) {
+                report = library.importBooks(in, campus);
+            }
+            StringBuilder sb = new StringBuilder("===== IMPORT RESULT =====\n");
+            sb.append("Imported: ").append(report.imported).append("\nRejected: ").append(report.rejected).append("\n");
+            report.errors.forEach(e -> sb.append(e).append("\n"));
+            sb.append("========================");
             JOptionPane.showMessageDialog(null, sb.toString());
+        } catch (Exception e) {
+            showError("Error importing books: " + e.getMessage());
+        }
+    }
+
+    private static void exportBooks(Campus campus) {
+        try {
+            String path = JOptionPane.showInputDialog("Enter CSV file to export to:");
+            if (path == null || path.trim().isEmpty()) return;
+            
+            int count;
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(path.trim()), StandardCharsets.UTF_8)) {
+                count = library.exportBooks(out, campus);
+            }
+            JOptionPane.showMessageDialog(null, count + " books exported successfully!");
+        } catch (Exception e) {
+            showError("Error exporting books: " + e.getMessage());
+        }
+    }
+
+    private static void showAllBooks(Campus campus) {
+        try {
+            showPages("===== ALL BOOKS =====", "=====================",
+                cursor -> library.listBooks(campus, cursor, LIST_PAGE_SIZE), Book::toString);
         } catch (Exception e) {
             showError("Error displaying books: " + e.getMessage());
         }
@@ -423,8 +5027,11 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                 return;
             }
             
-            campus.getOfficers().add(new Officer(id.trim(), name.trim(), campus.getName()));
-            saveData();
+            LibraryService.Result<Officer> result = library.hireOfficer(campus, id, name);
+            if (!result.isOk()) {
+                showError(result.message);
+                return;
+            }
             JOptionPane.showMessageDialog(null, "Officer hired successfully!");
         } catch (Exception e) {
             showError("Error hiring officer: " + e.getMessage());
@@ -436,12 +5043,11 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
             String id = JOptionPane.showInputDialog("Enter officer ID to remove:");
             if (id == null) return;
             
-            boolean removed = campus.getOfficers().removeIf(o -> o.id.equals(id));
-            if (removed) {
-                saveData();
+            LibraryService.Result<Officer> result = library.fireOfficer(campus, id);
+            if (result.isOk()) {
                 JOptionPane.showMessageDialog(null, "Officer removed successfully!");
             } else {
-                showError("Officer not found!");
+                showError(result.message);
             }
         } catch (Exception e) {
             showError("Error removing officer: " + e.getMessage());
@@ -453,10 +5059,7 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
             String id = JOptionPane.showInputDialog("Enter officer ID:");
             if (id == null) return;
             
-            Officer officer = campus.getOfficers().stream()
-                .filter(o -> o.id.equals(id))
-                .findFirst()
-                .orElse(null);
+            Officer officer = library.findOfficer(campus, id);
             
             if (officer == null) {
                 showError("Officer not found!");
@@ -473,10 +5076,8 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
 
     private static void showAllOfficers(Campus campus) {
         try {
-            StringBuilder sb = new StringBuilder("===== ALL OFFICERS =====\n");
-            campus.getOfficers().forEach(o -> sb.append(o.id).append(" - ").append(o.name).append("\n"));
-            sb.append("========================");
-            JOptionPane.showMessageDialog(null, sb.toString());
+            showPages("===== ALL OFFICERS =====", "========================",
+                cursor -> library.listOfficers(campus, cursor, LIST_PAGE_SIZE), o -> o.id + " - " + o.name);
         } catch (Exception e) {
             showError("Error displaying officers: " + e.getMessage());
         }
@@ -505,10 +5106,7 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
             String id = JOptionPane.showInputDialog("Enter student ID:");
             if (id == null) return;
             
-            Student student = campus.getStudents().stream()
-                .filter(s -> s.id.equals(id))
-                .findFirst()
-                .orElse(null);
+            Student student = library.findStudent(campus, id);
             
             if (student == null) {
                 showError("Student not found!");
@@ -525,10 +5123,8 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
 
     private static void showAllStudents(Campus campus) {
         try {
-            StringBuilder sb = new StringBuilder("===== ALL STUDENTS =====\n");
-            campus.getStudents().forEach(s -> sb.append(s.id).append(" - ").append(s.name).append("\n"));
-            sb.append("========================");
-            JOptionPane.showMessageDialog(null, sb.toString());
+            showPages("===== ALL STUDENTS =====", "========================",
+                cursor -> library.listStudents(campus, cursor, LIST_PAGE_SIZE), s -> s.id + " - " + s.name);
         } catch (Exception e) {
             showError("Error displaying students: " + e.getMessage());
         }
@@ -540,10 +5136,7 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
             String id = JOptionPane.showInputDialog("Enter officer ID:");
             if (id == null) return;
             
-            Officer officer = campus.getOfficers().stream()
-                .filter(o -> o.id.equals(id))
-                .findFirst()
-                .orElse(null);
+            Officer officer = library.loginOfficer(campus, id);
             
             if (officer == null) {
                 showError("Invalid credentials!");
@@ -561,14 +5154,16 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                 "===== OFFICER DASHBOARD =====" +
                 "\nCampus: " + campus.getName() +
                 "\nLogged in as: " + officer.name +
-                "\n1. Manage Books\n2. Search Students\n3. Exit" +
+                "\n1. Manage Books\n2. Search Students\n3. Overdue Loans\n4. Broadcast Notice\n5. Exit" +
                 "\n============================"
             );
             if (choice == null) return;
             switch (choice) {
                 case "1": manageBooksOfficer(campus); break;
                 case "2": searchStudentOfficer(campus); break;
-                case "3": return;
+                case "3": showOverdueLoans(campus); break;
+                case "4": broadcastNotice(officer, campus); break;
+                case "5": return;
                 default: showError("Invalid choice!");
             }
         }
@@ -598,14 +5193,9 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
 
     private static void arrangeByCategory(Campus campus) {
         try {
-            List<Book> sorted = campus.getCatalog().getAllBooks().stream()
-                .sorted(Comparator.comparing(Book::getCategory))
-                .collect(Collectors.toList());
-            
-            StringBuilder sb = new StringBuilder("===== BOOKS BY CATEGORY =====\n");
-            sorted.forEach(b -> sb.append(b.getCategory()).append(" - ").append(b.getTitle()).append("\n"));
-            sb.append("==============================");
-            JOptionPane.showMessageDialog(null, sb.toString());
+            showPages("===== BOOKS BY CATEGORY =====", "==============================",
+                cursor -> library.listBooksByCategory(campus, cursor, LIST_PAGE_SIZE),
+                b -> b.getCategory() + " - " + b.getTitle());
         } catch (Exception e) {
             showError("Error arranging books: " + e.getMessage());
         }
@@ -613,27 +5203,75 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
 
     private static void showBorrowedBooks(Campus campus) {
         try {
-            List<Book> borrowed = campus.getCatalog().getAllBooks().stream()
-                .filter(b -> !b.isAvailable())
-                .collect(Collectors.toList());
+            showPages("===== BORROWED BOOKS =====", "=========================",
+                cursor -> library.listBorrowedBooks(campus, cursor, LIST_PAGE_SIZE),
+                b -> b.getId() + " - " + b.getTitle()
+                    + (b.getCopies() == 1 ? "" : " (" + (b.getCopies() - b.getAvailableCopies()) + " of " + b.getCopies() + " out)"));
+        } catch (Exception e) {
+            showError("Error showing borrowed books: " + e.getMessage());
+        }
+    }
+
+    private static void broadcastNotice(Officer officer, Campus campus) {
+        try {
+            String choice = JOptionPane.showInputDialog(
+                "===== BROADCAST NOTICE =====" +
+                "\nSend to:\n1. All Students\n2. Students with Active Loans\n3. Students Holding a Category" +
+                "\n============================"
+            );
+            if (choice == null) return;
+            LibraryService.Audience audience;
+            switch (choice) {
+                case "1": audience = LibraryService.Audience.ALL; break;
+                case "2": audience = LibraryService.Audience.ACTIVE_LOANS; break;
+                case "3": audience = LibraryService.Audience.CATEGORY; break;
+                default: showError("Invalid choice!"); return;
+            }
+            String category = null;
+            if (audience == LibraryService.Audience.CATEGORY) {
+                category = JOptionPane.showInputDialog("Enter category:");
+                if (category == null) return;
+            }
+            String message = JOptionPane.showInputDialog("Enter message:");
+            if (message == null) return;
+
+            LibraryService.Result<Integer> result = library.broadcast(campus, officer, audience, category, message);
+            if (!result.isOk()) {
+                showError(result.message);
+                return;
+            }
+            JOptionPane.showMessageDialog(null, "Notice sent to " + result.value + " student(s).");
+        } catch (Exception e) {
+            showError("Error sending notice: " + e.getMessage());
+        }
+    }
+
+    private static void showOverdueLoans(Campus campus) {
+        try {
+            List<Loan> overdue = library.getOverdueLoans(campus);
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
             
-            StringBuilder sb = new StringBuilder("===== BORROWED BOOKS =====\n");
-            borrowed.forEach(b -> sb.append(b.getId()).append(" - ").append(b.getTitle()).append("\n"));
+            StringBuilder sb = new StringBuilder("===== OVERDUE LOANS =====\n");
+            for (Loan l : overdue) {
+                Book book = library.findBook(campus, l.bookId);
+                Student student = library.findStudent(campus, l.studentId);
+                sb.append(l.bookId).append(" - ").append(book == null ? "" : book.getTitle())
+                  .append(" | ").append(student == null ? "" : student.name).append(" (").append(l.studentId).append(")")
+                  .append(" | Due: ").append(sdf.format(new Date(l.dueAt))).append("\n");
+            }
             sb.append("=========================");
             JOptionPane.showMessageDialog(null, sb.toString());
         } catch (Exception e) {
-            showError("Error showing borrowed books: " + e.getMessage());
+            showError("Error showing overdue loans: " + e.getMessage());
         }
     }
 
     private static void searchBookOfficer(Campus campus) {
         try {
-            String input = JOptionPane.showInputDialog("Enter category or book ID:");
+            String input = JOptionPane.showInputDialog("Enter book ID, title, author, or category:");
             if (input == null) return;
             
-            List<Book> results = campus.getCatalog().getAllBooks().stream()
-                .filter(b -> b.getCategory().equalsIgnoreCase(input) || b.getId().equals(input))
-                .collect(Collectors.toList());
+            List<Book> results = library.searchBooks(campus, input, SEARCH_RESULT_LIMIT);
             
             if (results.isEmpty()) {
                 showError("No books found!");
@@ -653,7 +5291,7 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
             String id = JOptionPane.showInputDialog("Enter book ID to update:");
             if (id == null) return;
             
-            Book book = campus.getCatalog().searchBook(id);
+            Book book = library.findBook(campus, id);
             if (book == null) {
                 showError("Book not found!");
                 return;
@@ -677,8 +5315,11 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                 return;
             }
             
-            book.updateDetails(title.trim(), author.trim(), category.trim());
-            saveData();
+            LibraryService.Result<Book> result = library.updateBook(campus, id, title, author, category);
+            if (!result.isOk()) {
+                showError(result.message);
+                return;
+            }
             JOptionPane.showMessageDialog(null, "Book updated successfully!");
         } catch (Exception e) {
             showError("Error updating book: " + e.getMessage());
@@ -695,10 +5336,7 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
             String id = JOptionPane.showInputDialog("Enter student ID:");
             if (id == null) return;
             
-            Student student = campus.getStudents().stream()
-                .filter(s -> s.id.equals(id))
-                .findFirst()
-                .orElse(null);
+            Student student = library.loginStudent(campus, id);
             
             if (student == null) {
                 int choice = JOptionPane.showConfirmDialog(null, 
@@ -706,13 +5344,12 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                     "Registration", JOptionPane.YES_NO_OPTION);
                 if (choice == JOptionPane.YES_OPTION) {
                     String name = JOptionPane.showInputDialog("Enter your name:");
-                    if (name == null || name.trim().isEmpty()) {
-                        showError("Name cannot be empty!");
+                    LibraryService.Result<Student> result = library.registerStudent(campus, id, name);
+                    if (!result.isOk()) {
+                        showError(result.message);
                         return;
                     }
-                    student = new Student(id, name.trim(), campus.getName());
-                    campus.getStudents().add(student);
-                    saveData();
+                    student = result.value;
                     JOptionPane.showMessageDialog(null, "Registration successful!");
                 } else {
                     return;
@@ -731,7 +5368,8 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                 "\nCampus: " + campus.getName() +
                 "\nLogged in as: " + student.name +
                 "\n1. Borrow Book\n2. Return Book\n3. View Available Books" +
-                "\n4. Search Books\n5. Notifications\n6. Exit" +
+                "\n4. Search Books\n5. Notifications" + unreadLabel(student) + "\n6. Search All Campuses" +
+                "\n7. My Holds\n8. Exit" +
                 "\n============================"
             );
             if (choice == null) return;
@@ -740,8 +5378,10 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                 case "2": returnBook(student, campus); break;
                 case "3": viewAvailableBooks(campus); break;
                 case "4": searchBooksStudent(campus); break;
-                case "5": student.showNotifications(); break;
-                case "6": return;
+                case "5": showNotifications(student); break;
+                case "6": searchAllCampuses(); break;
+                case "7": showHolds(student, campus); break;
+                case "8": return;
                 default: showError("Invalid choice!");
             }
         }
@@ -752,48 +5392,96 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
             String id = JOptionPane.showInputDialog("Enter book ID:");
             if (id == null) return;
             
-            Book book = campus.getCatalog().searchBook(id);
-            if (book == null || !book.isAvailable()) {
-                showError("Book not available!");
+            LibraryService.Result<Date> result = library.borrowBook(campus, student, id);
+            if (result.status == LibraryService.Status.NOT_AVAILABLE) {
+                offerHold(student, campus, id);
+                return;
+            }
+            if (!result.isOk()) {
+                showError(result.message);
                 return;
             }
-            
-            Calendar cal = Calendar.getInstance();
-            cal.add(Calendar.DAY_OF_MONTH, 14);
-            Date dueDate = cal.getTime();
-            
-            student.borrowBook(book, dueDate);
             JOptionPane.showMessageDialog(null, 
                 "===== BORROW CONFIRMATION =====" +
                 "\nBook borrowed!\nDue Date: " + 
-                new SimpleDateFormat("yyyy-MM-dd").format(dueDate) +
+                new SimpleDateFormat("yyyy-MM-dd").format(result.value) +
                 "\n==============================");
-            saveData();
         } catch (Exception e) {
             showError("Error borrowing book: " + e.getMessage());
         }
     }
 
+    private static void offerHold(Student student, Campus campus, String id) {
+        int choice = JOptionPane.showConfirmDialog(null,
+            "Book not available!\nPlace a hold and be notified when a copy is ready?",
+            "Place Hold", JOptionPane.YES_NO_OPTION);
+        if (choice != JOptionPane.YES_OPTION) return;
+        LibraryService.Result<Integer> result = library.placeHold(campus, student, id);
+        if (!result.isOk()) {
+            showError(result.message);
+            return;
+        }
+        JOptionPane.showMessageDialog(null, "Hold placed. You are number " + result.value + " in the queue.");
+    }
+
+    private static void showHolds(Student student, Campus campus) {
+        try {
+            List<Hold> holds = library.getHolds(campus, student);
+            if (holds.isEmpty()) {
+                showError("You have no holds!");
+                return;
+            }
+            String[] labels = new String[holds.size()];
+            for (int i = 0; i < labels.length; i++) {
+                Hold hold = holds.get(i);
+                Book book = campus.getCatalog().searchBook(hold.bookId);
+                String title = book == null ? hold.bookId : book.getTitle() + " (" + hold.bookId + ")";
+                int position = campus.getHolds().position(hold);
+                labels[i] = title + (hold.isReady()
+                    ? " - ready until " + new SimpleDateFormat("yyyy-MM-dd").format(new Date(hold.expiresAt))
+                    : position == 0 ? "" : " - number " + position + " in queue");
+            }
+            String selected = (String) JOptionPane.showInputDialog(
+                null, "Select a hold to cancel:", "My Holds",
+                JOptionPane.QUESTION_MESSAGE, null, labels, labels[0]
+            );
+            if (selected == null) return;
+            Hold hold = holds.get(Arrays.asList(labels).indexOf(selected));
+            LibraryService.Result<Book> result = library.cancelHold(campus, student, hold.bookId);
+            if (!result.isOk()) {
+                showError(result.message);
+                return;
+            }
+            JOptionPane.showMessageDialog(null, "Hold cancelled.");
+        } catch (Exception e) {
+            showError("Error managing holds: " + e.getMessage());
+        }
+    }
+
     private static void returnBook(Student student, Campus campus) {
         try {
-            if (student.getBorrowedBooks().isEmpty()) {
+            List<Book> loaned = library.getLoanedBooks(campus, student);
+            if (loaned.isEmpty()) {
                 showError("No books to return!");
                 return;
             }
             
-            Book[] books = student.getBorrowedBooks().keySet().toArray(new Book[0]);
+            Book[] books = loaned.toArray(new Book[0]);
             Book selected = (Book) JOptionPane.showInputDialog(
                 null, "Select book to return:", "Return Book",
                 JOptionPane.QUESTION_MESSAGE, null, books, books[0]
             );
             
             if (selected != null) {
-                student.returnBook(selected);
+                LibraryService.Result<Book> result = library.returnBook(campus, student, selected.getId());
+                if (!result.isOk()) {
+                    showError(result.message);
+                    return;
+                }
                 JOptionPane.showMessageDialog(null, 
                     "===== RETURN CONFIRMATION =====" +
                     "\nBook returned successfully!" +
                     "\n==============================");
-                saveData();
             }
         } catch (Exception e) {
             showError("Error returning book: " + e.getMessage());
@@ -802,12 +5490,8 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
 
     private static void viewAvailableBooks(Campus campus) {
         try {
-            StringBuilder sb = new StringBuilder("===== AVAILABLE BOOKS =====\n");
-            campus.getCatalog().getAllBooks().stream()
-                .filter(Book::isAvailable)
-                .forEach(b -> sb.append(b.toString()).append("\n"));
-            sb.append("==========================");
-            JOptionPane.showMessageDialog(null, sb.toString());
+            showPages("===== AVAILABLE BOOKS =====", "==========================",
+                cursor -> library.listAvailableBooks(campus, cursor, LIST_PAGE_SIZE), Book::toString);
         } catch (Exception e) {
             showError("Error displaying books: " + e.getMessage());
         }
@@ -815,12 +5499,10 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
 
     private static void searchBooksStudent(Campus campus) {
         try {
-            String input = JOptionPane.showInputDialog("Enter category or book ID:");
+            String input = JOptionPane.showInputDialog("Enter book ID, title, author, or category:");
             if (input == null) return;
             
-            List<Book> results = campus.getCatalog().getAllBooks().stream()
-                .filter(b -> b.getCategory().equalsIgnoreCase(input) || b.getId().equals(input))
-                .collect(Collectors.toList());
+            List<Book> results = library.searchBooks(campus, input, SEARCH_RESULT_LIMIT);
             
             if (results.isEmpty()) {
                 showError("No books found!");
@@ -835,6 +5517,28 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
         }
     }
 
+    private static void searchAllCampuses() {
+        try {
+            String input = JOptionPane.showInputDialog("Enter book ID, title, author, or category:");
+            if (input == null) return;
+            
+            Map<Campus, List<Book>> results = library.searchAllCampuses(input, SEARCH_RESULT_LIMIT);
+            if (results.isEmpty()) {
+                showError("No books found!");
+            } else {
+                StringBuilder sb = new StringBuilder("===== SEARCH RESULTS =====\n");
+                results.forEach((c, books) -> {
+                    sb.append("--- ").append(c.getName()).append(" ---\n");
+                    books.forEach(b -> sb.append(b.toString()).append("\n"));
+                });
+                sb.append("========================");
+                JOptionPane.showMessageDialog(null, sb.toString());
+            }
+        } catch (Exception e) {
+            showError("Search error: " + e.getMessage());
+        }
+    }
+
     // ================== UTILITY FUNCTIONS ==================
     private static Campus selectCampus() {
         while (true) {
@@ -857,7 +5561,7 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
                     showError("Please enter a number between 1 and 6");
                     continue;
                 }
-                return campuses.get(choice - 1);
+                return library.getCampuses().get(choice - 1);
             } catch (NumberFormatException e) {
                 showError("Invalid input. Please enter a number.");
             } catch (Exception e) {
@@ -871,22 +5575,132 @@ public class LIBRARY_MANAGEMENT_SYSTEM {
         JOptionPane.showMessageDialog(null, message, "===== ERROR =====", JOptionPane.ERROR_MESSAGE);
     }
 
-    private static void saveData() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-            oos.writeObject(campuses);
+    // Shows one page at a time; earlier cursors and their starting positions are kept so the user can step back.
+    private static <T> void showPages(String header, String footer, Function<String, Page<T>> fetch, Function<T, String> format) {
+        Deque<String> previous = new ArrayDeque<>();
+        Deque<Integer> previousFirst = new ArrayDeque<>();
+        String cursor = null;
+        int first = 1;
+        while (true) {
+            Page<T> page = fetch.apply(cursor);
+            StringBuilder sb = new StringBuilder(header).append("\n");
+            page.items.forEach(item -> sb.append(format.apply(item)).append("\n"));
+            if (page.items.isEmpty()) sb.append("Nothing to show\n");
+            else if (page.next != null || !previous.isEmpty()) {
+                sb.append("Showing ").append(first).append("-").append(first + page.items.size() - 1).append("\n");
+            }
+            sb.append(footer);
+            List<String> options = new ArrayList<>();
+            if (!previous.isEmpty()) options.add("Previous");
+            if (page.next != null) options.add("Next");
+            options.add("Close");
+            int choice = JOptionPane.showOptionDialog(null, sb.toString(), header.replace("=", "").trim(),
+                JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE, null, options.toArray(), options.get(0));
+            String picked = choice < 0 ? "Close" : options.get(choice);
+            if (picked.equals("Next")) {
+                previous.push(cursor == null ? "" : cursor);
+                previousFirst.push(first);
+                cursor = page.next;
+                first += page.items.size();
+            } else if (picked.equals("Previous")) {
+                String back = previous.pop();
+                cursor = back.isEmpty() ? null : back;
+                first = previousFirst.pop();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static String unreadLabel(User user) {
+        int unread = library.getNotifications(user).unreadCount();
+        return unread == 0 ? "" : " (" + unread + " new)";
+    }
+
+    // Pages through the store newest first; unread entries are marked with '*' and become read once shown.
+    private static void showNotifications(User user) {
+        NotificationStore store = library.getNotifications(user);
+        if(store.size() == 0) {
+            JOptionPane.showMessageDialog(null, "===== NOTIFICATIONS ====\nNo new notifications\n========================");
+            return;
+        }
+        int offset = 0;
+        while (true) {
+            NotificationStore.View page = store.read(offset, NOTIFICATION_PAGE_SIZE);
+            StringBuilder sb = new StringBuilder("===== NOTIFICATIONS =====\n");
+            for (int i = 0; i < page.entries.size(); i++) {
+                sb.append(page.unread[i] ? "* " : "  ").append(page.entries.get(i)).append("\n");
+            }
+            sb.append("Showing ").append(offset + 1).append("-").append(offset + page.entries.size())
+              .append(" of ").append(store.size()).append("\n========================");
+            boolean more = offset + page.entries.size() < store.size();
+            Object[] options = more ? new Object[]{"Older", "Close"} : new Object[]{"Close"};
+            int choice = JOptionPane.showOptionDialog(null, sb.toString(), "Notifications",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE, null, options, options[0]);
+            if (!more || choice != 0) return;
+            offset += NOTIFICATION_PAGE_SIZE;
+        }
+    }
+
+    // Headless kiosk mode: serves LibraryServer until the process is stopped, then saves as exit() does.
+    private static void serve(int port) {
+        Logger log = LibraryServer.LOG;
+        loadData(log::severe);
+        // Read once, when the first HttpServer is created; see LibraryServer.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+        LibraryServer server;
+        try {
+            server = new LibraryServer(library,
+                new InetSocketAddress(System.getProperty("library.httpHost", "127.0.0.1"), port),
+                Integer.getInteger("library.httpThreads", LibraryServer.DEFAULT_THREADS));
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Error starting server", e);
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            save(log::severe);
+        }, "shutdown"));
+        server.start();
+        log.info("Serving the library on http://" + server.getAddress().getHostString() + ":"
+            + server.getAddress().getPort() + "/api/");
+    }
+
+    // Every exit snapshots the shards and flushes whatever the journal writer still holds.
+    private static void exit() {
+        save(LIBRARY_MANAGEMENT_SYSTEM::showError);
+        System.exit(0);
+    }
+
+    private static void save(Consumer<String> onError) {
+        try {
+            library.checkpoint();
+        } catch (IOException e) {
+            onError.accept("Error saving data: " + e.getMessage());
+        }
+        try {
+            library.close();
         } catch (IOException e) {
-            showError("Error saving data: " + e.getMessage());
+            onError.accept("Error saving data: " + e.getMessage());
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private static void loadData() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(DATA_FILE))) {
-            campuses = (ArrayList<Campus>) ois.readObject();
-        } catch (FileNotFoundException e) {
-            // First run, no data file
-        } catch (IOException | ClassNotFoundException e) {
-            showError("Error loading data: " + e.getMessage());
+    private static void loadData(Consumer<String> onError) {
+        try {
+            library.load();
+        } catch (IOException e) {
+            onError.accept("Error loading data: " + e.getMessage());
+        }
+        library.startOverdueTimer();
+        String metricsFile = System.getProperty("library.metricsFile");
+        if (metricsFile != null) library.startMetricsExport(new File(metricsFile), METRICS_EXPORT_INTERVAL_MS);
+        if (Boolean.getBoolean("library.jmx")) {
+            try {
+                library.registerMetricsMBeans();
+            } catch (JMException e) {
+                onError.accept("Error registering metrics: " + e.getMessage());
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.mycompany.library_management_system;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx6g"})
+public class CatalogBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int books;
+
+    Catalog catalog;
+    String[] ids;
+    String[] titleQueries;
+    String middleCursor;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ArrayList<Campus> campuses = LibraryDatasets.campuses(books);
+        catalog = campuses.get(0).getCatalog();
+        Random random = new Random(7);
+        ids = new String[1024];
+        titleQueries = new String[1024];
+        List<Book> all = new ArrayList<>(catalog.getAllBooks());
+        for (int i = 0; i < ids.length; i++) {
+            Book book = all.get(random.nextInt(all.size()));
+            ids[i] = book.getId();
+            titleQueries[i] = book.getTitle().split(" ")[0];
+        }
+        all.sort(Catalog.BY_CATEGORY);
+        Book middle = all.get(all.size() / 2);
+        middleCursor = Catalog.fold(middle.getCategory()) + '\0' + middle.getId();
+    }
+
+    private int next() { return next = (next + 1) & 1023; }
+
+    @Benchmark
+    public Book searchBookById() {
+        return catalog.searchBook(ids[next()]);
+    }
+
+    // searchBookAdmin: ID, title, author or category
+    @Benchmark
+    public List<Book> searchAdminByTitleWord() {
+        return catalog.search(titleQueries[next()], 50);
+    }
+
+    // searchBookOfficer: category or ID
+    @Benchmark
+    public List<Book> searchOfficerByCategory() {
+        return catalog.search(LibraryDatasets.CATEGORIES[next() % LibraryDatasets.CATEGORIES.length], 50);
+    }
+
+    // searchBooksStudent: category or ID
+    @Benchmark
+    public List<Book> searchStudentById() {
+        return catalog.search(ids[next()], 50);
+    }
+
+    // arrangeBooksByCategory: one page of category order, from the start and from halfway through
+    @Benchmark
+    public Page<Book> pageByCategoryFirst() {
+        return catalog.pageByCategory(null, 50);
+    }
+
+    @Benchmark
+    public Page<Book> pageByCategoryMiddle() {
+        return catalog.pageByCategory(middleCursor, 50);
+    }
+}
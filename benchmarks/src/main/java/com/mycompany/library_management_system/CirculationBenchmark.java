@@ -0,0 +1,76 @@
+package com.mycompany.library_management_system;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx6g"})
+public class CirculationBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int books;
+
+    File dir;
+    LibraryService library;
+    Campus campus;
+    CirculationService circulation;
+    Book[] catalogBooks;
+
+    @State(Scope.Thread)
+    public static class Desk {
+        int next;
+        Student student;
+
+        @Setup(Level.Trial)
+        public void setUp(CirculationBenchmark bench) {
+            student = new Student("desk-" + Thread.currentThread().getId(), "Desk", bench.campus.getName());
+            bench.campus.getStudents().add(student);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = LibraryDatasets.tempDir();
+        LibraryDatasets.writeSnapshot(new File(dir, "library_data.dat"), LibraryDatasets.campuses(books));
+        library = new LibraryService(new File(dir, "library_data.dat"), new File(dir, "library_data.log"), false);
+        library.load();
+        campus = library.getCampuses().get(0);
+        circulation = new CirculationService(64);
+        catalogBooks = campus.getCatalog().getAllBooks().stream().filter(Book::isAvailable).limit(4096).toArray(Book[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try {
+            library.close();
+        } finally {
+            LibraryDatasets.deleteTree(dir);
+        }
+    }
+
+    // Lock-striped borrow and return without persistence.
+    @Benchmark
+    @Threads(4)
+    public CirculationService.Result borrowReturnInMemory(Desk desk) {
+        Book book = catalogBooks[desk.next = (desk.next + 1) % catalogBooks.length];
+        long now = System.currentTimeMillis();
+        if (circulation.borrow(campus.getLoans(), campus.getHolds(), desk.student, book, now, now) == CirculationService.Result.BORROWED) {
+            return circulation.returnBook(campus.getLoans(), campus.getHolds(), desk.student, book, now);
+        }
+        return CirculationService.Result.NOT_AVAILABLE;
+    }
+
+    // Full service path including the journal (and its periodic snapshots).
+    @Benchmark
+    public LibraryService.Result<Book> borrowReturnJournaled(Desk desk) {
+        Book book = catalogBooks[desk.next = (desk.next + 1) % catalogBooks.length];
+        library.borrowBook(campus, desk.student, book.getId());
+        return library.returnBook(campus, desk.student, book.getId());
+    }
+}
@@ -0,0 +1,96 @@
+package com.mycompany.library_management_system;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Synthetic campuses for benchmarks: books spread evenly over the default campuses, a fixed
+// student population per campus and a share of books out on loan. Seeded, so every run and
+// every fork sees the same data.
+final class LibraryDatasets {
+    static final String[] CATEGORIES = {
+        "Mathematics", "Physics", "Chemistry", "Biology", "History", "Geography", "Literature",
+        "Philosophy", "Economics", "Law", "Medicine", "Engineering", "Computer Science", "Art",
+        "Music", "Agriculture"
+    };
+    private static final int VOCABULARY = 20_000;
+    private static final int AUTHORS = 5_000;
+
+    private LibraryDatasets() {}
+
+    static String bookId(int campus, int n) { return "B" + campus + "-" + n; }
+    static String studentId(int campus, int n) { return "S" + campus + "-" + n; }
+
+    static ArrayList<Campus> campuses(int books, int studentsPerCampus, double loanedShare, long seed) {
+        Random random = new Random(seed);
+        String[] words = words(random);
+        ArrayList<Campus> campuses = new ArrayList<>();
+        for (String name : LibraryService.DEFAULT_CAMPUSES) campuses.add(new Campus(name));
+
+        int perCampus = Math.max(1, books / campuses.size());
+        for (int c = 0; c < campuses.size(); c++) {
+            Campus campus = campuses.get(c);
+            for (int i = 0; i < perCampus; i++) {
+                String title = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                    + " " + words[random.nextInt(words.length / 10)];
+                String author = "Author " + words[random.nextInt(AUTHORS)];
+                String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                campus.getCatalog().addBook(new Book(bookId(c, i), title, author, category, campus.getName()));
+            }
+            for (int i = 0; i < studentsPerCampus; i++) {
+                campus.getStudents().add(new Student(studentId(c, i), "Student " + i, campus.getName()));
+            }
+            for (int i = 0; i < 10; i++) {
+                campus.getOfficers().add(new Officer("O" + c + "-" + i, "Officer " + i, campus.getName()));
+            }
+        }
+
+        CirculationService circulation = new CirculationService(64);
+        long now = System.currentTimeMillis();
+        for (int c = 0; c < campuses.size(); c++) {
+            Campus campus = campuses.get(c);
+            int loans = (int) (perCampus * loanedShare);
+            for (int i = 0; i < loans && studentsPerCampus > 0; i++) {
+                Student student = campus.getStudents().get(studentId(c, random.nextInt(studentsPerCampus)));
+                Book book = campus.getCatalog().searchBook(bookId(c, random.nextInt(perCampus)));
+                circulation.borrow(campus.getLoans(), campus.getHolds(), student, book, now, now + 14L * 24 * 3600 * 1000);
+            }
+        }
+        return campuses;
+    }
+
+    static ArrayList<Campus> campuses(int books) {
+        return campuses(books, Math.max(100, books / 50), 0.05, 42);
+    }
+
+    static void writeSnapshot(File dataFile, List<Campus> campuses) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile), 1 << 16))) {
+            SnapshotCodec.write(out, campuses, null);
+        }
+    }
+
+    // Callers remove it with deleteTree() when done; a dataset can run to gigabytes.
+    static File tempDir() throws IOException {
+        return Files.createTempDirectory("lms-bench").toFile();
+    }
+
+    static void deleteTree(File dir) throws IOException {
+        if (dir == null || !dir.exists()) return;
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) Files.delete(path);
+        }
+    }
+
+    private static String[] words(Random random) {
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 3 + random.nextInt(7);
+            for (int j = 0; j < length; j++) sb.append((char) ('a' + random.nextInt(26)));
+            words[i] = sb.toString();
+        }
+        return words;
+    }
+}
@@ -0,0 +1,427 @@
+package com.mycompany.library_management_system;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Headless term-start load: simulated students on every campus borrow, return, search and log in,
+// and desks add books, through the same LibraryService calls the Swing menus make. Runs closed
+// loop (each user waits `think` ms between operations) or, with rate > 0, open loop with Poisson
+// arrivals measured from their scheduled time so a stalled server shows up in the latencies.
+// Prints throughput, latency percentiles per operation and any consistency violations, both as
+// seen by clients during the run and in the loans after it and after a restart.
+//
+//   java -cp target/benchmarks.jar com.mycompany.library_management_system.LoadGenerator \
+//       users=2000 seconds=60 rate=5000 mix=borrow:35,return:30,search:25,login:8,add:2
+public final class LoadGenerator {
+    enum Op { BORROW, RETURN, SEARCH, LOGIN, ADD }
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    static {
+        DEFAULTS.put("books", "100000");
+        DEFAULTS.put("students", "2000");      // per campus
+        DEFAULTS.put("users", "1000");         // concurrent simulated users, spread over campuses
+        DEFAULTS.put("threads", "64");         // workers serving open-loop arrivals
+        DEFAULTS.put("rate", "0");             // arrivals per second; 0 runs closed loop
+        DEFAULTS.put("think", "0");            // closed-loop pause between a user's operations, ms
+        DEFAULTS.put("seconds", "30");
+        DEFAULTS.put("warmup", "5");
+        DEFAULTS.put("mix", "borrow:35,return:30,search:25,login:8,add:2");
+        DEFAULTS.put("loaned", "0.05");        // share of books already out before the run
+        DEFAULTS.put("commitBatch", String.valueOf(LibraryService.DEFAULT_COMMIT_BATCH));
+        DEFAULTS.put("commitIntervalMs", String.valueOf(LibraryService.DEFAULT_COMMIT_INTERVAL_MS));
+        DEFAULTS.put("seed", "42");
+        DEFAULTS.put("dir", "");
+    }
+    private static final int MAX_REPORTED_VIOLATIONS = 20;
+
+    private final Map<String, String> config;
+    private final int[] mix = new int[Op.values().length];
+    private final int mixTotal;
+    private LibraryService library;
+    private List<Campus> campuses;
+    private int booksPerCampus;
+    // One per simulated student: a person does one thing at a time, even when arrivals overlap.
+    private Object[] studentLocks;
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    private final Stats[] stats = new Stats[Op.values().length];
+    // Client-side view of who holds each book and how many books each student holds. Entries are
+    // dropped before a return is sent and added after a borrow is acknowledged, so a second holder
+    // or a sixth loan can only be seen if the server really allowed it.
+    private final ConcurrentHashMap<String, String> holders = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> loanCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger addedBooks = new AtomicInteger();
+    private final LongAdder violationCount = new LongAdder();
+    private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+
+    private LoadGenerator(Map<String, String> config) {
+        this.config = config;
+        for (String entry : config.get("mix").split(",")) {
+            String[] kv = entry.split(":");
+            mix[Op.valueOf(kv[0].trim().toUpperCase()).ordinal()] = Integer.parseInt(kv[1].trim());
+        }
+        mixTotal = Arrays.stream(mix).sum();
+        if (mixTotal <= 0) throw new IllegalArgumentException("mix needs at least one positive weight");
+        for (Op op : Op.values()) stats[op.ordinal()] = new Stats();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> config = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !DEFAULTS.containsKey(arg.substring(0, eq))) {
+                System.err.println("Unknown argument " + arg + "; expected key=value with key one of " + DEFAULTS.keySet());
+                System.exit(2);
+            }
+            config.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int violations = new LoadGenerator(config).run();
+        System.exit(violations == 0 ? 0 : 1);
+    }
+
+    private int run() throws Exception {
+        File dir = config.get("dir").isEmpty() ? LibraryDatasets.tempDir() : new File(config.get("dir"));
+        File dataFile = new File(dir, "library_data.dat");
+        File journalFile = new File(dir, "library_data.log");
+        int books = intArg("books");
+        booksPerCampus = Math.max(1, books / LibraryService.DEFAULT_CAMPUSES.length);
+        System.out.println("Preparing " + books + " books, " + intArg("students") + " students per campus in " + dir);
+        LibraryDatasets.writeSnapshot(dataFile, LibraryDatasets.campuses(books, intArg("students"),
+            Double.parseDouble(config.get("loaned")), Long.parseLong(config.get("seed"))));
+        library = new LibraryService(dataFile, journalFile, false, intArg("commitBatch"), intArg("commitIntervalMs"));
+        library.load();
+        campuses = library.getCampuses();
+        studentLocks = new Object[Math.min(intArg("users"), campuses.size() * intArg("students"))];
+        for (int i = 0; i < studentLocks.length; i++) studentLocks[i] = new Object();
+        seedClientView();
+
+        long warmupNanos = TimeUnit.SECONDS.toNanos(intArg("warmup"));
+        long runNanos = TimeUnit.SECONDS.toNanos(intArg("seconds"));
+        System.out.println("Running " + config);
+        List<Thread> threads = intArg("rate") > 0 ? openLoop() : closedLoop();
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(warmupNanos));
+        measuring = true;
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(runNanos));
+        measuring = false;
+        long elapsed = System.nanoTime() - start;
+        running = false;
+        for (Thread t : threads) t.join();
+        library.flush();
+
+        report(elapsed);
+        checkLoans("after run", library.getCampuses());
+        library.close();
+        LibraryService restarted = new LibraryService(dataFile, journalFile, false);
+        restarted.load();
+        compareAfterRestart(restarted);
+        restarted.close();
+        // A directory named on the command line is kept for inspection.
+        if (config.get("dir").isEmpty()) LibraryDatasets.deleteTree(dir);
+
+        System.out.println("Violations: " + violationCount.sum());
+        violations.forEach(v -> System.out.println("  " + v));
+        if (violationCount.sum() > violations.size()) {
+            System.out.println("  ... " + (violationCount.sum() - violations.size()) + " more");
+        }
+        return (int) Math.min(Integer.MAX_VALUE, violationCount.sum());
+    }
+
+    // ---------- drivers ----------
+    private List<Thread> closedLoop() {
+        int users = intArg("users");
+        long think = intArg("think");
+        List<Thread> threads = new ArrayList<>(users);
+        for (int u = 0; u < users; u++) {
+            final int user = u;
+            Thread t = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(user * 0x9E3779B97F4A7C15L);
+                while (running) {
+                    execute(user, random, System.nanoTime());
+                    if (think > 0) sleepQuietly(think);
+                }
+            }, "user-" + u);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+        return threads;
+    }
+
+    private List<Thread> openLoop() {
+        int users = intArg("users");
+        double meanGapNanos = 1e9 / intArg("rate");
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(intArg("threads"), intArg("threads"), 0, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>());
+        Thread driver = new Thread(() -> {
+            SplittableRandom arrivals = new SplittableRandom(Long.parseLong(config.get("seed")));
+            long next = System.nanoTime();
+            while (running) {
+                next += (long) (-Math.log(1 - arrivals.nextDouble()) * meanGapNanos);
+                long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                final long scheduled = next;
+                final int user = arrivals.nextInt(users);
+                final long seed = arrivals.nextLong();
+                workers.execute(() -> execute(user, new SplittableRandom(seed), scheduled));
+            }
+            workers.shutdown();
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int backlog = workers.getQueue().size();
+            if (backlog > 0) System.out.println("Open loop left " + backlog + " arrivals unserved");
+        }, "arrivals");
+        driver.start();
+        return Collections.singletonList(driver);
+    }
+
+    // ---------- operations ----------
+    private void execute(int user, SplittableRandom random, long scheduledNanos) {
+        synchronized (studentLocks[user % studentLocks.length]) {
+            executeAs(user, random, scheduledNanos);
+        }
+    }
+
+    private void executeAs(int user, SplittableRandom random, long scheduledNanos) {
+        int c = user % campuses.size();
+        Campus campus = campuses.get(c);
+        String studentId = LibraryDatasets.studentId(c, (user / campuses.size()) % intArg("students"));
+        Op op = pick(random);
+        Outcome outcome;
+        try {
+            switch (op) {
+                case BORROW: outcome = borrow(campus, studentId, random); break;
+                case RETURN: outcome = returnOne(campus, studentId, random); break;
+                case SEARCH: outcome = search(campus, random); break;
+                case LOGIN: outcome = library.loginStudent(campus, studentId) != null ? Outcome.OK : Outcome.REJECTED; break;
+                default: outcome = addBook(campus, c, random);
+            }
+        } catch (RuntimeException e) {
+            outcome = Outcome.ERROR;
+            violation(op + " threw " + e + origin(e));
+        }
+        if (measuring) stats[op.ordinal()].record(System.nanoTime() - scheduledNanos, outcome);
+    }
+
+    private Outcome borrow(Campus campus, String studentId, SplittableRandom random) {
+        Student student = library.findStudent(campus, studentId);
+        String bookId = randomBook(campus, random);
+        LibraryService.Result<Date> result = library.borrowBook(campus, student, bookId);
+        if (!result.isOk()) return Outcome.REJECTED;
+        String key = campus.getName() + "/" + bookId;
+        String previous = holders.putIfAbsent(key, studentId);
+        if (previous != null) violation(key + " borrowed by " + studentId + " while held by " + previous);
+        int held = loanCounts.computeIfAbsent(campus.getName() + "/" + studentId, k -> new AtomicInteger()).incrementAndGet();
+        if (held > CirculationService.MAX_LOANS) violation(studentId + " at " + campus.getName() + " holds " + held + " books");
+        return Outcome.OK;
+    }
+
+    private Outcome returnOne(Campus campus, String studentId, SplittableRandom random) {
+        Student student = library.findStudent(campus, studentId);
+        List<Book> loaned = library.getLoanedBooks(campus, student);
+        if (loaned.isEmpty()) return Outcome.REJECTED;
+        String bookId = loaned.get(random.nextInt(loaned.size())).getId();
+        String key = campus.getName() + "/" + bookId;
+        boolean tracked = holders.remove(key, studentId);
+        AtomicInteger count = loanCounts.computeIfAbsent(campus.getName() + "/" + studentId, k -> new AtomicInteger());
+        if (tracked) count.decrementAndGet();
+        if (library.returnBook(campus, student, bookId).isOk()) return Outcome.OK;
+        // Another thread for the same student returned it first.
+        return Outcome.REJECTED;
+    }
+
+    private Outcome search(Campus campus, SplittableRandom random) {
+        String query;
+        if (random.nextBoolean()) {
+            query = LibraryDatasets.CATEGORIES[random.nextInt(LibraryDatasets.CATEGORIES.length)];
+        } else {
+            Book book = campus.getCatalog().searchBook(randomBook(campus, random));
+            query = book == null ? "a" : book.getTitle().split(" ")[0];
+        }
+        return library.searchBooks(campus, query, 50).isEmpty() ? Outcome.REJECTED : Outcome.OK;
+    }
+
+    private Outcome addBook(Campus campus, int c, SplittableRandom random) {
+        String id = "L" + c + "-" + addedBooks.incrementAndGet();
+        String category = LibraryDatasets.CATEGORIES[random.nextInt(LibraryDatasets.CATEGORIES.length)];
+        return library.addBook(campus, id, "Load " + id, "Load Author", category).isOk() ? Outcome.OK : Outcome.REJECTED;
+    }
+
+    private String randomBook(Campus campus, SplittableRandom random) {
+        return LibraryDatasets.bookId(campuses.indexOf(campus), random.nextInt(booksPerCampus));
+    }
+
+    private Op pick(SplittableRandom random) {
+        int r = random.nextInt(mixTotal);
+        for (Op op : Op.values()) {
+            r -= mix[op.ordinal()];
+            if (r < 0) return op;
+        }
+        throw new AssertionError();
+    }
+
+    // ---------- consistency ----------
+    private void seedClientView() {
+        for (Campus campus : campuses) {
+            campus.getLoans().forEach(loan -> {
+                holders.put(campus.getName() + "/" + loan.bookId, loan.studentId);
+                loanCounts.computeIfAbsent(campus.getName() + "/" + loan.studentId, k -> new AtomicInteger()).incrementAndGet();
+            });
+        }
+    }
+
+    // Every copy out at most once, no student over the limit, and each book's free count matching
+    // its loans and the copies set aside for holds.
+    private void checkLoans(String when, List<Campus> state) {
+        for (Campus campus : state) {
+            Set<String> copiesOut = new HashSet<>();
+            Map<String, Integer> perStudent = new HashMap<>();
+            Map<String, Integer> perBook = new HashMap<>();
+            campus.getLoans().forEach(loan -> {
+                if (!copiesOut.add(loan.bookId + "#" + loan.copy)) {
+                    violation(when + ": " + campus.getName() + "/" + loan.bookId + " copy " + loan.copy + " is lent twice");
+                }
+                perStudent.merge(loan.studentId, 1, Integer::sum);
+                perBook.merge(loan.bookId, 1, Integer::sum);
+            });
+            for (Hold hold : campus.getHolds().list()) if (hold.isReady()) perBook.merge(hold.bookId, 1, Integer::sum);
+            perStudent.forEach((student, n) -> {
+                if (n > CirculationService.MAX_LOANS) violation(when + ": " + student + " at " + campus.getName() + " holds " + n + " books");
+            });
+            campus.getCatalog().forEachBook(book -> {
+                int out = perBook.getOrDefault(book.getId(), 0);
+                if (book.getAvailableCopies() != book.getCopies() - out) {
+                    violation(when + ": " + campus.getName() + "/" + book.getId() + " shows " + book.getAvailableCopies()
+                        + " of " + book.getCopies() + " free with " + out + " out");
+                }
+            });
+        }
+    }
+
+    private void compareAfterRestart(LibraryService restarted) {
+        checkLoans("after restart", restarted.getCampuses());
+        for (Campus before : campuses) {
+            Campus after = restarted.getCampus(before.getName());
+            Set<String> expected = loanKeys(before), actual = loanKeys(after);
+            if (!expected.equals(actual)) {
+                Set<String> lost = new TreeSet<>(expected);
+                lost.removeAll(actual);
+                Set<String> extra = new TreeSet<>(actual);
+                extra.removeAll(expected);
+                violation("after restart: " + before.getName() + " lost " + lost.size() + " loans, gained " + extra.size());
+            }
+            if (after.getCatalog().size() != before.getCatalog().size()) {
+                violation("after restart: " + before.getName() + " has " + after.getCatalog().size() + " books, expected "
+                    + before.getCatalog().size());
+            }
+        }
+    }
+
+    private static Set<String> loanKeys(Campus campus) {
+        Set<String> keys = new HashSet<>();
+        campus.getLoans().forEach(loan -> keys.add(loan.studentId + "/" + loan.bookId + "#" + loan.copy));
+        return keys;
+    }
+
+    // The innermost frame in the library, which is where a race usually shows.
+    private static String origin(Throwable e) {
+        for (StackTraceElement frame : e.getStackTrace()) {
+            if (frame.getClassName().startsWith(LoadGenerator.class.getPackageName())) return " at " + frame;
+        }
+        return "";
+    }
+
+    private void violation(String message) {
+        violationCount.increment();
+        if (violations.size() < MAX_REPORTED_VIOLATIONS) violations.add(message);
+    }
+
+    // ---------- reporting ----------
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long total = 0;
+        System.out.printf("%n%-8s %10s %10s %10s %8s %9s %9s %9s %9s %9s%n",
+            "op", "count", "ok", "rejected", "errors", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (Op op : Op.values()) {
+            Stats s = stats[op.ordinal()];
+            long count = s.latency.count();
+            total += count;
+            if (count == 0) continue;
+            System.out.printf("%-8s %10d %10d %10d %8d %9d %9d %9d %9d %9d%n", op.name().toLowerCase(), count,
+                s.ok.sum(), s.rejected.sum(), s.errors.sum(), s.latency.percentile(0.50), s.latency.percentile(0.90),
+                s.latency.percentile(0.99), s.latency.percentile(0.999), s.latency.max());
+        }
+        System.out.printf("%nThroughput: %.0f ops/s (%d ops in %.1f s)%n", total / seconds, total, seconds);
+    }
+
+    private int intArg(String key) { return Integer.parseInt(config.get(key)); }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    enum Outcome { OK, REJECTED, ERROR }
+
+    private static final class Stats {
+        final LongAdder ok = new LongAdder(), rejected = new LongAdder(), errors = new LongAdder();
+        final Histogram latency = new Histogram();
+
+        void record(long nanos, Outcome outcome) {
+            latency.record(nanos / 1000);
+            (outcome == Outcome.OK ? ok : outcome == Outcome.REJECTED ? rejected : errors).increment();
+        }
+    }
+
+    // Microsecond latencies in power-of-two ranges each split into 16 linear steps, so reported
+    // percentiles are within about 6% of the true value.
+    static final class Histogram {
+        private static final int SUB = 16;
+        private final AtomicLongArray counts = new AtomicLongArray(64 * SUB);
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long micros) {
+            counts.incrementAndGet(index(Math.max(0, micros)));
+            total.increment();
+            max.accumulateAndGet(micros, Math::max);
+        }
+
+        long count() { return total.sum(); }
+        long max() { return max.get(); }
+
+        long percentile(double p) {
+            long target = (long) Math.ceil(count() * p), seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= target && seen > 0) return Math.min(upperBound(i), max());
+            }
+            return max();
+        }
+
+        private static int index(long v) {
+            if (v < SUB) return (int) v;
+            int k = 63 - Long.numberOfLeadingZeros(v);
+            return (k - 3) * SUB + (int) ((v >> (k - 4)) & (SUB - 1));
+        }
+
+        private static long upperBound(int i) {
+            if (i < SUB) return i;
+            int k = i / SUB + 3;
+            return ((long) (SUB + i % SUB) << (k - 4)) + (1L << (k - 4)) - 1;
+        }
+    }
+}
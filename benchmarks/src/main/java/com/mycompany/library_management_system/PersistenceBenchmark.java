@@ -0,0 +1,81 @@
+package com.mycompany.library_management_system;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx6g"})
+public class PersistenceBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int books;
+
+    File dir;
+    File serialized;
+    LibraryService library;
+    LibraryService loaded;
+    ArrayList<Campus> campuses;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = LibraryDatasets.tempDir();
+        LibraryDatasets.writeSnapshot(new File(dir, "library_data.dat"), LibraryDatasets.campuses(books));
+        library = open();
+        library.load();
+        campuses = new ArrayList<>(library.getCampuses());
+        serialized = new File(dir, "library_data.ser");
+        serializeData();
+    }
+
+    private LibraryService open() {
+        return new LibraryService(new File(dir, "library_data.dat"), new File(dir, "library_data.log"), false);
+    }
+
+    @Benchmark
+    public void saveData() throws IOException {
+        library.save();
+    }
+
+    // Closed after each load so its writer thread and shard pool do not keep every loaded copy alive.
+    @TearDown(Level.Invocation)
+    public void closeLoaded() throws IOException {
+        if (loaded != null) loaded.close();
+        loaded = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try {
+            library.close();
+        } finally {
+            LibraryDatasets.deleteTree(dir);
+        }
+    }
+
+    @Benchmark
+    public LibraryService loadData() throws IOException {
+        loaded = open();
+        loaded.load();
+        return loaded;
+    }
+
+    // Baseline: the original format, one ObjectOutputStream graph of every campus.
+    @Benchmark
+    public void serializeData() throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(serialized)))) {
+            out.writeObject(campuses);
+        }
+    }
+
+    @Benchmark
+    public Object deserializeData() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serialized)))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.mycompany.library_management_system;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BookImportTest {
+    private static final int ROWS = 2500;
+
+    @TempDir
+    File dir;
+
+    interface Step {
+        void run() throws Exception;
+    }
+
+    private LibraryService open() throws IOException {
+        LibraryService library = new LibraryService(new File(dir, "library_data.dat"), new File(dir, "library_data.log"), false);
+        library.load();
+        return library;
+    }
+
+    private static String rows() {
+        StringBuilder csv = new StringBuilder("id,title,author,category,campus,copies\n");
+        for (int i = 0; i < ROWS; i++) csv.append("I").append(i).append(",Imported ").append(i).append(",Author,Category,,1\n");
+        return csv.toString();
+    }
+
+    // Delivers the rows, then runs `midImport` and fails as a dropped upload would.
+    private static Reader failingAfter(String csv, Step midImport) {
+        StringReader rows = new StringReader(csv);
+        return new Reader() {
+            public int read(char[] buf, int off, int len) throws IOException {
+                int n = rows.read(buf, off, len);
+                if (n != -1) return n;
+                try {
+                    midImport.run();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+                throw new IOException("Connection reset");
+            }
+
+            public void close() {}
+        };
+    }
+
+    private static void awaitBook(LibraryService library, Campus campus, String id) throws InterruptedException {
+        for (int i = 0; i < 500 && library.findBook(campus, id) == null; i++) Thread.sleep(10);
+        assertNotNull(library.findBook(campus, id), id + " was never imported");
+    }
+
+    @Test
+    void importsEveryRowAndSkipsTheHeader() throws IOException {
+        LibraryService library = open();
+        Campus campus = library.getCampuses().get(0);
+        LibraryService.ImportReport report = library.importBooks(new StringReader(rows()), campus);
+        assertEquals(ROWS, report.imported);
+        library.close();
+
+        library = open();
+        assertEquals(ROWS, library.getCampuses().get(0).getCatalog().size());
+        library.close();
+    }
+
+    @Test
+    void byteOrderMarkDoesNotHideTheHeader() throws IOException {
+        LibraryService library = open();
+        Campus campus = library.getCampuses().get(0);
+        LibraryService.ImportReport report = library.importBooks(new StringReader("\uFEFF" + rows()), campus);
+        assertEquals(ROWS, report.imported);
+        assertEquals(0, report.rejected);
+        assertNull(library.findBook(campus, "id"));
+        assertNull(library.findBook(campus, "\uFEFFid"));
+
+        report = library.importBooks(new StringReader("\uFEFFB1,Title,Author,Category\n"), campus);
+        assertEquals(1, report.imported);
+        assertNotNull(library.findBook(campus, "B1"));
+        library.close();
+    }
+
+    @Test
+    void failedImportStaysRolledBackAfterACheckpoint() throws Exception {
+        LibraryService library = open();
+        Campus campus = library.getCampuses().get(0);
+        library.addBook(campus, "KEEP", "Kept", "Author", "Category");
+        LibraryService service = library;
+        Reader source = failingAfter(rows(), () -> {
+            awaitBook(service, campus, "I999");
+            service.checkpoint();
+        });
+        assertThrows(IOException.class, () -> service.importBooks(source, campus));
+        assertNull(library.findBook(campus, "I0"));
+        library.close();
+
+        library = open();
+        Campus reloaded = library.getCampuses().get(0);
+        assertEquals(1, reloaded.getCatalog().size());
+        assertNotNull(library.findBook(reloaded, "KEEP"));
+        library.close();
+    }
+
+    @Test
+    void importHoldsOffAutomaticCheckpoints() throws Exception {
+        LibraryService library = open();
+        Campus campus = library.getCampuses().get(0);
+        File snapshot = new File(dir, "library_data.0.dat");
+        LibraryService service = library;
+        Reader source = failingAfter(rows(), () -> {
+            awaitBook(service, campus, "I999");
+            // Enough other traffic for a checkpoint to be due; two flushes give the writer a chance to take it.
+            for (int i = 0; i < LibraryService.SNAPSHOT_INTERVAL + 100; i++) service.registerStudent(campus, "S" + i, "Student " + i);
+            service.flush();
+            service.flush();
+            assertFalse(snapshot.exists(), "checkpoint taken mid-import");
+        });
+        assertThrows(IOException.class, () -> service.importBooks(source, campus));
+        library.close();
+
+        library = open();
+        Campus reloaded = library.getCampuses().get(0);
+        assertEquals(0, reloaded.getCatalog().size());
+        assertEquals(LibraryService.SNAPSHOT_INTERVAL + 100, reloaded.getStudents().size());
+        library.close();
+    }
+}
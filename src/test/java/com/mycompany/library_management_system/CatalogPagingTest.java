@@ -0,0 +1,128 @@
+package com.mycompany.library_management_system;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CatalogPagingTest {
+    private static final String[] CATEGORIES = {"Mathematics", "mathematics", "History", "Zoology", "MATHEMATICS"};
+
+    @TempDir
+    File dir;
+
+    private LibraryService open(boolean mapped) throws IOException {
+        LibraryService library = new LibraryService(new File(dir, "library_data.dat"), new File(dir, "library_data.log"), mapped);
+        library.load();
+        return library;
+    }
+
+    private static <T> List<T> walk(Function<String, Page<T>> fetch, int limit) {
+        List<T> all = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<T> page = fetch.apply(cursor);
+            assertTrue(page.items.size() <= limit);
+            assertFalse(page.next != null && page.items.size() < limit, "short page with a next cursor");
+            all.addAll(page.items);
+            cursor = page.next;
+        } while (cursor != null);
+        return all;
+    }
+
+    private static List<String> ids(List<Book> books) {
+        return books.stream().map(Book::getId).toList();
+    }
+
+    @Test
+    void pageEndsExactlyAtTheLastItem() {
+        Page<String> full = Page.of(List.of("a", "b", "c").iterator(), 3, s -> s);
+        assertEquals(List.of("a", "b", "c"), full.items);
+        assertNull(full.next);
+
+        Iterator<String> source = List.of("a", "b", "c", "d").iterator();
+        Page<String> first = Page.of(source, 3, s -> s + "!");
+        assertEquals("c!", first.next);
+        assertTrue(source.hasNext());
+
+        Page<String> empty = Page.of(Collections.emptyIterator(), 3, s -> s);
+        assertTrue(empty.items.isEmpty());
+        assertNull(empty.next);
+    }
+
+    // Books are added out of order across differently-cased categories; in mapped mode the first
+    // batch is read back from the store and the second stays in memory, so both sources merge.
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void cursorsWalkTheWholeCatalogOnce(boolean mapped) throws IOException {
+        LibraryService library = open(mapped);
+        Campus campus = library.getCampuses().get(0);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 40; i++) order.add(i);
+        Collections.shuffle(order, new Random(7));
+        for (int i : order.subList(0, 25)) {
+            library.addBook(campus, String.format("B%02d", i), "Title " + i, "Author", CATEGORIES[i % CATEGORIES.length]);
+        }
+        library.checkpoint();
+        library.close();
+        library = open(mapped);
+        campus = library.getCampuses().get(0);
+        for (int i : order.subList(25, 40)) {
+            library.addBook(campus, String.format("B%02d", i), "Title " + i, "Author", CATEGORIES[i % CATEGORIES.length]);
+        }
+        library.registerStudent(campus, "S1", "Student");
+        assertTrue(library.borrowBook(campus, library.findStudent(campus, "S1"), "B07").isOk());
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) expected.add(String.format("B%02d", i));
+        Campus c = campus;
+        LibraryService service = library;
+        for (int limit : new int[]{1, 8, 10, 40, 100}) {
+            assertEquals(expected, ids(walk(cursor -> service.listBooks(c, cursor, limit), limit)), "limit " + limit);
+        }
+        List<String> available = new ArrayList<>(expected);
+        available.remove("B07");
+        assertEquals(available, ids(walk(cursor -> service.listAvailableBooks(c, cursor, 6), 6)));
+
+        List<Book> byCategory = walk(cursor -> service.listBooksByCategory(c, cursor, 7), 7);
+        assertEquals(40, new HashSet<>(ids(byCategory)).size());
+        List<Book> sorted = new ArrayList<>(byCategory);
+        sorted.sort(Catalog.BY_CATEGORY);
+        assertEquals(sorted, byCategory);
+        assertEquals("history", Catalog.fold(byCategory.get(0).getCategory()));
+        assertEquals("zoology", Catalog.fold(byCategory.get(39).getCategory()));
+        library.close();
+    }
+
+    @Test
+    void categoryCursorResumesMidCategory() throws IOException {
+        LibraryService library = open(false);
+        Campus campus = library.getCampuses().get(0);
+        library.addBook(campus, "A1", "Title", "Author", "History");
+        library.addBook(campus, "M3", "Title", "Author", "Mathematics");
+        library.addBook(campus, "M1", "Title", "Author", "mathematics");
+        library.addBook(campus, "M2", "Title", "Author", "MATHEMATICS");
+        library.addBook(campus, "Z1", "Title", "Author", "Zoology");
+
+        Page<Book> first = library.listBooksByCategory(campus, null, 2);
+        assertEquals(List.of("A1", "M1"), ids(first.items));
+        assertEquals("mathematics\0M1", first.next);
+        Page<Book> second = library.listBooksByCategory(campus, first.next, 2);
+        assertEquals(List.of("M2", "M3"), ids(second.items));
+        Page<Book> last = library.listBooksByCategory(campus, second.next, 2);
+        assertEquals(List.of("Z1"), ids(last.items));
+        assertNull(last.next);
+
+        // A cursor left behind by a book that has since been removed still resumes after it.
+        assertEquals(List.of("M3", "Z1"), ids(library.listBooksByCategory(campus, "mathematics\0M25", 5).items));
+        assertEquals(List.of("Z1"), ids(library.listBooksByCategory(campus, "mathematics\0M9", 5).items));
+        assertEquals(List.of("M1", "M2"), ids(library.listBooksByCategory(campus, "history\0A1", 2).items));
+        library.close();
+    }
+}
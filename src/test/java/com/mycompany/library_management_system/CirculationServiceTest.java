@@ -0,0 +1,120 @@
+package com.mycompany.library_management_system;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class CirculationServiceTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final CirculationService circulation = new CirculationService(16);
+    private final LoanTable loans = new LoanTable();
+    private final HoldTable holds = new HoldTable();
+
+    // Starts every task at once and waits for all of them.
+    private static void race(int threads, Callable<Void> task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> done = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                done.add(pool.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            for (Future<Void> f : done) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void oneCopyGoesToOneDesk() throws Exception {
+        Book book = new Book("B1", "Only Copy", "A", "Cat", "C");
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < 32; i++) students.add(new Student("S" + i, "Student " + i, "C"));
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger borrowed = new AtomicInteger();
+        race(students.size(), () -> {
+            Student student = students.get(next.getAndIncrement());
+            if (circulation.borrow(loans, holds, student, book, 0, DAY) == CirculationService.Result.BORROWED) {
+                borrowed.incrementAndGet();
+            }
+            return null;
+        });
+        assertEquals(1, borrowed.get());
+        assertEquals(0, book.getAvailableCopies());
+        assertEquals(1, loans.forBook("B1").size());
+    }
+
+    @Test
+    void loanLimitHoldsUnderConcurrentBorrows() throws Exception {
+        Student student = new Student("S1", "Student", "C");
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 16; i++) books.add(new Book("B" + i, "Title " + i, "A", "Cat", "C"));
+        AtomicInteger next = new AtomicInteger();
+        race(books.size(), () -> {
+            circulation.borrow(loans, holds, student, books.get(next.getAndIncrement()), 0, DAY);
+            return null;
+        });
+        assertEquals(CirculationService.MAX_LOANS, loans.count("S1"));
+        assertEquals(CirculationService.MAX_LOANS, books.stream().filter(Book::isOnLoan).count());
+    }
+
+    @Test
+    void copiesAndLoansStayInStepUnderChurn() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 10; i++) books.add(new Book("B" + i, "Title " + i, "A", "Cat", "C", 3));
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < 40; i++) students.add(new Student("S" + i, "Student " + i, "C"));
+        race(8, () -> {
+            Random random = ThreadLocalRandom.current();
+            for (int i = 0; i < 20_000; i++) {
+                Student student = students.get(random.nextInt(students.size()));
+                Book book = books.get(random.nextInt(books.size()));
+                if (random.nextBoolean()) {
+                    circulation.borrow(loans, holds, student, book, i, i + DAY);
+                } else {
+                    circulation.returnBook(loans, holds, student, book, i);
+                }
+            }
+            return null;
+        });
+
+        int total = 0;
+        for (Book book : books) {
+            List<Loan> out = loans.forBook(book.getId());
+            assertEquals(book.getCopies() - book.getAvailableCopies(), out.size(), book.getId());
+            Set<Integer> copies = new HashSet<>();
+            for (Loan loan : out) {
+                assertTrue(loan.copy >= 1 && loan.copy <= book.getCopies(), book.getId() + " copy " + loan.copy);
+                assertTrue(copies.add(loan.copy), book.getId() + " copy " + loan.copy + " lent twice");
+            }
+            total += out.size();
+        }
+        for (Student student : students) {
+            assertTrue(loans.count(student.id) <= CirculationService.MAX_LOANS, student.id);
+        }
+        assertEquals(total, loans.size());
+    }
+
+    @Test
+    void returnedCopyGoesToTheNextHold() {
+        Book book = new Book("B1", "Title", "A", "Cat", "C");
+        Student first = new Student("S1", "First", "C");
+        Student second = new Student("S2", "Second", "C");
+        Student third = new Student("S3", "Third", "C");
+        assertEquals(CirculationService.Result.BORROWED, circulation.borrow(loans, holds, first, book, 0, DAY));
+        assertEquals(CirculationService.Result.HELD, circulation.placeHold(loans, holds, second, book, 1));
+        assertEquals(CirculationService.Result.RETURNED, circulation.returnBook(loans, holds, first, book, 2));
+
+        assertEquals(CirculationService.Result.NOT_AVAILABLE, circulation.borrow(loans, holds, third, book, 3, DAY));
+        assertEquals(CirculationService.Result.BORROWED, circulation.borrow(loans, holds, second, book, 4, DAY));
+        assertNull(holds.find("S2", "B1"));
+    }
+}
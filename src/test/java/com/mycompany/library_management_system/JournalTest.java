@@ -0,0 +1,115 @@
+package com.mycompany.library_management_system;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalTest {
+    @TempDir
+    File dir;
+
+    private static List<String> replay(Journal journal, boolean fromPrevious) throws IOException {
+        List<String> records = new ArrayList<>();
+        journal.replay((op, fields) -> records.add(op + ":" + String.join(",", fields)), fromPrevious);
+        return records;
+    }
+
+    private File write(String... ids) throws IOException {
+        File file = new File(dir, "test.log");
+        Journal journal = new Journal(file);
+        for (String id : ids) journal.append(Journal.ADD_BOOK, "Campus", id, "Title " + id);
+        journal.close();
+        return file;
+    }
+
+    private static void truncate(File file, long bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - bytes);
+        }
+    }
+
+    @Test
+    void replaysCommittedRecordsInOrder() throws IOException {
+        File file = write("B1", "B2", "B3");
+        assertEquals(List.of("1:Campus,B1,Title B1", "1:Campus,B2,Title B2", "1:Campus,B3,Title B3"),
+            replay(new Journal(file), false));
+    }
+
+    @Test
+    void truncatedTailIsCutOff() throws IOException {
+        File file = write("B1", "B2");
+        long intact = file.length();
+        write("B3");
+        truncate(file, 3);
+
+        Journal journal = new Journal(file);
+        assertEquals(2, replay(journal, false).size());
+        assertEquals(intact, file.length());
+        journal.append(Journal.REMOVE_BOOK, "Campus", "B1");
+        journal.close();
+        assertEquals(List.of("1:Campus,B1,Title B1", "1:Campus,B2,Title B2", "2:Campus,B1"),
+            replay(new Journal(file), false));
+    }
+
+    @Test
+    void corruptRecordEndsReplay() throws IOException {
+        File file = write("B1", "B2", "B3");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 6);
+            int b = raf.read();
+            raf.seek(raf.length() - 6);
+            raf.write(b ^ 0xFF);
+        }
+        assertEquals(List.of("1:Campus,B1,Title B1", "1:Campus,B2,Title B2"), replay(new Journal(file), false));
+    }
+
+    @Test
+    void retiredLogsFollowTheirSnapshot() throws IOException {
+        File file = new File(dir, "test.log");
+        Journal journal = new Journal(file);
+        journal.append(Journal.ADD_BOOK, "Campus", "B1", "Old");
+        journal.rotate();
+        journal.append(Journal.ADD_BOOK, "Campus", "B2", "New");
+        journal.commit();
+        // A snapshot that never finished leaves the retired log to be replayed first.
+        assertEquals(List.of("1:Campus,B1,Old", "1:Campus,B2,New"), replay(journal, false));
+
+        journal.retire(true);
+        assertTrue(new File(file.getPath() + ".prev").exists());
+        assertEquals(List.of("1:Campus,B2,New"), replay(journal, false));
+        assertEquals(List.of("1:Campus,B1,Old", "1:Campus,B2,New"), replay(journal, true));
+        journal.close();
+    }
+
+    @Test
+    void serviceLoadsUpToATornRecord() throws IOException {
+        File data = new File(dir, "library_data.dat"), log = new File(dir, "library_data.log");
+        LibraryService library = new LibraryService(data, log, false);
+        library.load();
+        Campus campus = library.getCampuses().get(0);
+        for (int i = 0; i < 3; i++) library.addBook(campus, "B" + i, "Title " + i, "Author", "Category");
+        library.close();
+        truncate(new File(dir, "library_data.0.log"), 5);
+
+        library = new LibraryService(data, log, false);
+        library.load();
+        campus = library.getCampuses().get(0);
+        assertNotNull(library.findBook(campus, "B1"));
+        assertNull(library.findBook(campus, "B2"));
+        library.addBook(campus, "B3", "Title 3", "Author", "Category");
+        library.close();
+
+        library = new LibraryService(data, log, false);
+        library.load();
+        campus = library.getCampuses().get(0);
+        assertEquals(3, campus.getCatalog().size());
+        assertNotNull(library.findBook(campus, "B3"));
+        library.close();
+    }
+}
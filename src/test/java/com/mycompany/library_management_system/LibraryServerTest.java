@@ -0,0 +1,108 @@
+package com.mycompany.library_management_system;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LibraryServerTest {
+    @TempDir
+    File dir;
+
+    private LibraryService library;
+    private LibraryServer server;
+    private Campus campus;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String base;
+
+    @BeforeEach
+    void start() throws IOException {
+        library = new LibraryService(new File(dir, "library_data.dat"), new File(dir, "library_data.log"), false);
+        library.load();
+        campus = library.getCampuses().get(0);
+        library.addBook(campus, "B1", "Calculus", "Stewart", "Mathematics");
+        library.registerStudent(campus, "S1", "Student");
+        server = new LibraryServer(library, new InetSocketAddress("127.0.0.1", 0), 4);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/";
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.stop();
+        library.close();
+    }
+
+    private HttpResponse<String> get(String path, String token) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path));
+        if (token != null) request.header("X-Session", token);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String token, String form) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path))
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(form));
+        if (token != null) request.header("X-Session", token);
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String field(String json, String name) {
+        Matcher m = Pattern.compile("\"" + name + "\":\"([^\"]*)\"").matcher(json);
+        assertTrue(m.find(), name + " missing from " + json);
+        return m.group(1);
+    }
+
+    @Test
+    void loginBorrowReturnAndReadNotifications() throws Exception {
+        HttpResponse<String> login = post("login", null,
+            "campus=" + URLEncoder.encode(campus.getName(), StandardCharsets.UTF_8) + "&id=S1");
+        assertEquals(200, login.statusCode(), login.body());
+        String token = field(login.body(), "token");
+
+        HttpResponse<String> borrow = post("borrow", token, "book=B1");
+        assertEquals(200, borrow.statusCode(), borrow.body());
+        assertEquals("B1", field(borrow.body(), "book"));
+        assertEquals(409, post("borrow", token, "book=B1").statusCode());
+        HttpResponse<String> loans = get("loans", token);
+        assertEquals("B1", field(loans.body(), "book"));
+
+        assertEquals(200, post("return", token, "book=B1").statusCode());
+        assertEquals(409, post("return", token, "book=B1").statusCode());
+        assertEquals("{\"loans\":[]}", get("loans", token).body());
+
+        HttpResponse<String> first = get("notifications", token);
+        assertEquals(200, first.statusCode(), first.body());
+        assertTrue(first.body().contains("\"unread\":true"), first.body());
+        assertTrue(first.body().contains("Calculus"), first.body());
+        HttpResponse<String> second = get("notifications", token);
+        assertFalse(second.body().contains("\"unread\":true"), second.body());
+
+        assertEquals(200, post("logout", token, "").statusCode());
+        assertEquals(401, get("loans", token).statusCode());
+    }
+
+    @Test
+    void rejectsBadRequests() throws Exception {
+        assertEquals(401, get("loans", null).statusCode());
+        assertEquals(405, get("borrow", null).statusCode());
+        assertEquals(404, get("nothing", null).statusCode());
+        HttpResponse<String> login = post("login", null,
+            "campus=" + URLEncoder.encode(campus.getName(), StandardCharsets.UTF_8) + "&id=NOBODY");
+        assertEquals(401, login.statusCode());
+        assertEquals("Invalid student ID!", field(login.body(), "error"));
+    }
+}
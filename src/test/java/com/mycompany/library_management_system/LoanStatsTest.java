@@ -0,0 +1,129 @@
+package com.mycompany.library_management_system;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LoanStatsTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @TempDir
+    File dir;
+
+    private static long at(LocalDate date, int hour) {
+        return date.atTime(hour, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static Loan loan(String bookId, long borrowedAt) {
+        return new Loan(bookId, "S1", 1, borrowedAt, borrowedAt + 14 * DAY);
+    }
+
+    @Test
+    void rollsUpEachDay() {
+        LoanStats stats = new LoanStats();
+        LocalDate monday = LocalDate.of(2026, 3, 2);
+        Book calculus = new Book("B1", "Calculus", "Stewart", "Mathematics", "C");
+        Book poems = new Book("B2", "Poems", "Eliot", "Literature", "C");
+        Loan first = loan("B1", at(monday, 9));
+        Loan second = loan("B2", at(monday, 17));
+        stats.borrowed(calculus, first, 0);
+        stats.borrowed(poems, second, 0);
+        stats.returned(first, at(monday.plusDays(3), 10), 0);
+        stats.returned(second, second.dueAt + DAY, 0);
+        stats.returned(second, 0, 0);
+
+        List<LoanStats.Day> days = stats.days();
+        assertEquals(3, days.size());
+        LoanStats.Day borrowed = days.get(0);
+        assertEquals(monday.toEpochDay(), borrowed.epochDay);
+        assertEquals(2, borrowed.borrows);
+        assertEquals(1L, borrowed.byCategory.get("Mathematics"));
+        assertEquals(1L, borrowed.byCategory.get("Literature"));
+        LoanStats.Day returned = days.get(1);
+        assertEquals(1, returned.returns);
+        assertEquals(0, returned.lateReturns);
+        assertEquals(at(monday.plusDays(3), 10) - first.borrowedAt, returned.loanMillis);
+        assertEquals(1, days.get(2).lateReturns);
+
+        long thursday = monday.plusDays(3).toEpochDay();
+        assertEquals(1, stats.days(thursday, thursday).size());
+        assertEquals(4, stats.getEvents());
+    }
+
+    @Test
+    void replaySkipsEventsTheSnapshotCovers() {
+        LoanStats stats = new LoanStats();
+        stats.restore(5);
+        Book book = new Book("B1", "Calculus", "Stewart", "Mathematics", "C");
+        Loan loan = loan("B1", at(LocalDate.of(2026, 3, 2), 9));
+        assertEquals(0, stats.borrowed(book, loan, 4));
+        assertEquals(0, stats.borrowed(book, loan, 5));
+        assertEquals(7, stats.borrowed(book, loan, 7));
+        // Records reach the journal slightly out of order; an earlier number past the snapshot still counts.
+        assertEquals(6, stats.returned(loan, loan.borrowedAt + DAY, 6));
+        assertEquals(8, stats.borrowed(book, loan, 0));
+        assertEquals(2, stats.days().stream().mapToLong(d -> d.borrows).sum());
+        assertEquals(1, stats.days().stream().mapToLong(d -> d.returns).sum());
+        assertEquals(2, stats.topTitles(1).get(0).count);
+    }
+
+    private LibraryService open() throws IOException {
+        LibraryService library = new LibraryService(new File(dir, "library_data.dat"), new File(dir, "library_data.log"), false);
+        library.load();
+        return library;
+    }
+
+    private static void borrowAndReturn(LibraryService library, int times) {
+        Campus campus = library.getCampuses().get(0);
+        for (int i = 0; i < times; i++) {
+            Student student = library.findStudent(campus, "S" + (i % 3));
+            assertTrue(library.borrowBook(campus, student, "B" + (i % 4)).isOk());
+            assertTrue(library.returnBook(campus, student, "B" + (i % 4)).isOk());
+        }
+    }
+
+    private static BorrowingAnalytics.Report report(LibraryService library) {
+        return library.borrowingReport(library.getCampuses().get(0), null, null, 10);
+    }
+
+    // A crash after a checkpoint's snapshot but before its log was retired leaves that log to be
+    // replayed over a snapshot whose totals already include it.
+    @Test
+    void checkpointAndReplayDoNotCountTwice() throws IOException {
+        LibraryService library = open();
+        Campus campus = library.getCampuses().get(0);
+        for (int i = 0; i < 4; i++) library.addBook(campus, "B" + i, "Title " + i, "Author", "Category");
+        for (int i = 0; i < 3; i++) library.registerStudent(campus, "S" + i, "Student " + i);
+        borrowAndReturn(library, 10);
+        library.checkpoint();
+        borrowAndReturn(library, 3);
+        library.close();
+        Files.copy(new File(dir, "library_data.0.log.prev").toPath(), new File(dir, "library_data.0.log.old").toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+
+        for (int restart = 0; restart < 2; restart++) {
+            library = open();
+            BorrowingAnalytics.Report report = report(library);
+            assertEquals(13, report.borrows);
+            assertEquals(13, report.returns);
+            assertEquals(4, report.topTitles.get(0).borrows);
+            library.close();
+        }
+
+        library = open();
+        borrowAndReturn(library, 2);
+        library.checkpoint();
+        library.close();
+        library = open();
+        assertEquals(15, report(library).borrows);
+        library.close();
+    }
+}
@@ -0,0 +1,119 @@
+package com.mycompany.library_management_system;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class NotificationStoreTest {
+    private static final long START = 1_700_000_000_000L;
+
+    private static Notification message(long time, String text) {
+        return new Notification(time, Notification.Template.MESSAGE, text);
+    }
+
+    private static NotificationStore filled(int count) {
+        NotificationStore store = new NotificationStore();
+        for (int i = 0; i < count; i++) store.add(message(START + i, "M" + i));
+        return store;
+    }
+
+    private static String text(Notification n) {
+        return n.args[0];
+    }
+
+    @Test
+    void ringDropsTheOldestOnceFull() {
+        int extra = 30;
+        NotificationStore store = filled(NotificationStore.MAX_ENTRIES + extra);
+        assertEquals(NotificationStore.MAX_ENTRIES, store.size());
+        List<Notification> all = store.page(0, NotificationStore.MAX_ENTRIES + 10);
+        assertEquals(NotificationStore.MAX_ENTRIES, all.size());
+        assertEquals("M" + (NotificationStore.MAX_ENTRIES + extra - 1), text(all.get(0)));
+        assertEquals("M" + extra, text(all.get(all.size() - 1)));
+        assertFalse(store.contains(Notification.Template.MESSAGE, "M" + (extra - 1)));
+        assertTrue(store.contains(Notification.Template.MESSAGE, "M" + extra));
+
+        List<Notification> second = store.page(10, 10);
+        assertEquals("M" + (NotificationStore.MAX_ENTRIES + extra - 11), text(second.get(0)));
+        assertTrue(store.page(NotificationStore.MAX_ENTRIES, 10).isEmpty());
+    }
+
+    @Test
+    void addAgesOutOldEntries() {
+        NotificationStore store = new NotificationStore();
+        store.add(message(START, "old"));
+        store.add(message(START + 1000, "second"));
+        store.add(message(START + NotificationStore.MAX_AGE_MS, "recent"));
+        assertEquals(3, store.size());
+
+        store.add(message(START + NotificationStore.MAX_AGE_MS + 500, "new"));
+        assertEquals(3, store.size());
+        assertFalse(store.contains(Notification.Template.MESSAGE, "old"));
+        assertEquals(3, store.unreadCount());
+
+        store.add(message(START + 3 * NotificationStore.MAX_AGE_MS, "much later"));
+        assertEquals(1, store.size());
+        assertEquals(1, store.unreadCount());
+    }
+
+    @Test
+    void unreadCountIsClampedToTheEntries() {
+        NotificationStore store = filled(5);
+        assertEquals(5, store.unreadCount());
+        store.setUnread(-3);
+        assertEquals(0, store.unreadCount());
+        store.setUnread(50);
+        assertEquals(5, store.unreadCount());
+        store.setUnread(2);
+        NotificationStore.View view = store.read(0, 5);
+        assertArrayEquals(new boolean[]{true, true, false, false, false}, view.unread);
+        assertEquals(0, store.unreadCount());
+    }
+
+    @Test
+    void evictingUnseenEntriesLowersTheUnreadCount() {
+        NotificationStore store = filled(NotificationStore.MAX_ENTRIES);
+        store.setUnread(0);
+        store.add(message(START + NotificationStore.MAX_ENTRIES, "new"));
+        assertEquals(1, store.unreadCount());
+
+        store = filled(NotificationStore.MAX_ENTRIES);
+        for (int i = 0; i < 10; i++) store.add(message(START + NotificationStore.MAX_ENTRIES + i, "more"));
+        assertEquals(NotificationStore.MAX_ENTRIES, store.unreadCount());
+        store.markRead();
+        assertEquals(0, store.unreadCount());
+    }
+
+    @Test
+    void readMarksOnlyTheEntriesShown() {
+        NotificationStore store = filled(25);
+        NotificationStore.View first = store.read(0, 10);
+        assertEquals(10, first.entries.size());
+        for (boolean unread : first.unread) assertTrue(unread);
+        assertEquals(15, store.unreadCount());
+
+        NotificationStore.View again = store.read(5, 10);
+        assertArrayEquals(new boolean[]{false, false, false, false, false, true, true, true, true, true}, again.unread);
+        assertEquals(10, store.unreadCount());
+
+        store.add(message(START + 100, "newest"));
+        NotificationStore.View top = store.read(0, 1);
+        assertEquals("newest", text(top.entries.get(0)));
+        assertTrue(top.unread[0]);
+        assertEquals(10, store.unreadCount());
+        assertEquals(0, store.read(30, 10).entries.size());
+    }
+
+    @Test
+    void replayedEntriesAreNotAddedTwice() {
+        NotificationStore store = new NotificationStore();
+        Notification borrowed = new Notification(START, Notification.Template.BORROWED, "Calculus");
+        assertTrue(store.addIfAbsent(borrowed));
+        assertFalse(store.addIfAbsent(new Notification(START, borrowed.template, "Calculus")));
+        assertTrue(store.addIfAbsent(new Notification(START + 1, borrowed.template, "Calculus")));
+        assertTrue(store.addIfAbsent(message(START, "Calculus")));
+        assertEquals(3, store.size());
+        assertEquals(3, store.unreadCount());
+    }
+}
@@ -0,0 +1,178 @@
+package com.mycompany.library_management_system;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class SnapshotRecoveryTest {
+    @TempDir
+    File dir;
+
+    private LibraryService open(boolean mapped) throws IOException {
+        LibraryService library = new LibraryService(new File(dir, "library_data.dat"), new File(dir, "library_data.log"), mapped);
+        library.load();
+        return library;
+    }
+
+    private static void addBooks(LibraryService library, int from, int to) {
+        Campus campus = library.getCampuses().get(0);
+        for (int i = from; i < to; i++) library.addBook(campus, "B" + i, "Title " + i, "Author", "Category", 2);
+    }
+
+    private static void flipByte(File file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        }
+    }
+
+    private static byte[] encode(List<Campus> campuses) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            SnapshotCodec.write(out, campuses, null);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Campus> decode(byte[] bytes) throws IOException {
+        return SnapshotCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    void currentVersionRoundTrips() throws IOException {
+        LibraryService library = open(false);
+        Campus campus = library.getCampuses().get(0);
+        addBooks(library, 0, 3);
+        library.hireOfficer(campus, "O1", "Officer");
+        for (String id : new String[]{"S1", "S2", "S3"}) library.registerStudent(campus, id, "Student " + id);
+        Student s1 = library.findStudent(campus, "S1"), s2 = library.findStudent(campus, "S2");
+        Student s3 = library.findStudent(campus, "S3");
+        library.borrowBook(campus, s1, "B0");
+        library.borrowBook(campus, s2, "B0");
+        library.placeHold(campus, s3, "B0");
+        library.borrowBook(campus, s1, "B1");
+        library.returnBook(campus, s1, "B1");
+
+        byte[] bytes = encode(library.getCampuses());
+        library.close();
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(bytes));
+        assertEquals(SnapshotCodec.MAGIC, header.readInt());
+        assertEquals(SnapshotCodec.VERSION, header.readUnsignedShort());
+
+        List<Campus> read = decode(bytes);
+        assertEquals(LibraryService.DEFAULT_CAMPUSES.length, read.size());
+        Campus copy = read.get(0);
+        assertEquals(campus.getName(), copy.getName());
+        assertEquals(3, copy.getCatalog().size());
+        Book b0 = copy.getCatalog().searchBook("B0");
+        assertEquals(2, b0.getCopies());
+        assertEquals(0, b0.getAvailableCopies());
+        assertEquals(2, copy.getCatalog().searchBook("B1").getAvailableCopies());
+        assertNotNull(copy.getOfficers().get("O1"));
+        assertEquals(3, copy.getStudents().size());
+        assertEquals(2, copy.getLoans().size());
+        assertNotNull(copy.getLoans().find("S2", "B0"));
+        assertEquals(1, copy.getHolds().position(copy.getHolds().find("S3", "B0")));
+        assertEquals(campus.getLoanStats().getEvents(), copy.getLoanStats().getEvents());
+        assertEquals(3, copy.getLoanStats().days().stream().mapToLong(d -> d.borrows).sum());
+        assertEquals(1, copy.getLoanStats().days().stream().mapToLong(d -> d.returns).sum());
+    }
+
+    @Test
+    void aggregatesPastTheIntRangeRoundTrip() throws IOException {
+        Campus campus = new Campus("Campus");
+        long big = 5L * Integer.MAX_VALUE;
+        LoanStats.Day day = new LoanStats.Day(20_000);
+        day.borrows = big;
+        day.returns = big + 1;
+        day.lateReturns = big + 2;
+        day.loanMillis = Long.MAX_VALUE;
+        day.byCategory.put("Category", big + 3);
+        campus.getLoanStats().restore(day);
+        campus.getLoanStats().restore(new TopK.Entry("B1", "Title", big + 4, big + 5));
+        campus.getLoanStats().restore(big + 6);
+
+        LoanStats stats = decode(encode(List.of(campus))).get(0).getLoanStats();
+        LoanStats.Day copy = stats.days().get(0);
+        assertEquals(20_000, copy.epochDay);
+        assertEquals(big, copy.borrows);
+        assertEquals(big + 1, copy.returns);
+        assertEquals(big + 2, copy.lateReturns);
+        assertEquals(Long.MAX_VALUE, copy.loanMillis);
+        assertEquals(big + 3, copy.byCategory.get("Category"));
+        TopK.Entry title = stats.topTitles(1).get(0);
+        assertEquals(big + 4, title.count);
+        assertEquals(big + 5, title.error);
+        assertEquals(big + 6, stats.getEvents());
+    }
+
+    @Test
+    void varLongsRoundTrip() throws IOException {
+        long[] values = {0, 1, 127, 128, Integer.MAX_VALUE, 1L << 35, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (long value : values) SnapshotCodec.writeVarLong(out, value);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (long value : values) assertEquals(value, SnapshotCodec.readVarLong(in));
+    }
+
+    @Test
+    void newerVersionIsRejected() throws IOException {
+        byte[] bytes = encode(List.of(new Campus("Campus")));
+        bytes[4] = (byte) ((SnapshotCodec.VERSION + 1) >> 8);
+        bytes[5] = (byte) (SnapshotCodec.VERSION + 1);
+        IOException e = assertThrows(IOException.class, () -> decode(bytes));
+        assertTrue(e.getMessage().contains("version"), e.getMessage());
+    }
+
+    @Test
+    void damagedSectionIsRejected() throws IOException {
+        Campus campus = new Campus("Campus");
+        campus.getCatalog().addBook(new Book("B1", "Title", "Author", "Category", "Campus"));
+        byte[] bytes = encode(List.of(campus));
+        bytes[bytes.length / 2] ^= 0xFF;
+        assertThrows(IOException.class, () -> decode(bytes));
+    }
+
+    // The newest generation fails its CRC; the previous one plus its journal must bring back
+    // everything, and the bad file is kept aside rather than overwritten.
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void previousGenerationReplacesADamagedSnapshot(boolean mapped) throws IOException {
+        LibraryService library = open(mapped);
+        addBooks(library, 0, 5);
+        library.checkpoint();
+        addBooks(library, 5, 10);
+        library.checkpoint();
+        addBooks(library, 10, 12);
+        library.close();
+
+        File live = new File(dir, "library_data.0.dat");
+        assertTrue(new File(dir, "library_data.0.dat.prev").exists());
+        if (mapped) {
+            flipByte(new File(SnapshotCodec.mappedBookFile(live)), 40);
+        } else {
+            flipByte(live, live.length() / 2);
+        }
+
+        library = open(mapped);
+        Campus campus = library.getCampuses().get(0);
+        assertEquals(12, campus.getCatalog().size());
+        for (int i = 0; i < 12; i++) assertNotNull(library.findBook(campus, "B" + i), "B" + i);
+        assertTrue(new File(dir, "library_data.0.dat.damaged").exists());
+        library.checkpoint();
+        library.close();
+
+        library = open(mapped);
+        assertEquals(12, library.getCampuses().get(0).getCatalog().size());
+        library.close();
+    }
+}
@@ -0,0 +1,90 @@
+package com.mycompany.library_management_system;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+class TopKTest {
+    private static Map<String, TopK.Entry> byKey(List<TopK.Entry> entries) {
+        Map<String, TopK.Entry> map = new HashMap<>();
+        for (TopK.Entry e : entries) map.put(e.key, e);
+        return map;
+    }
+
+    @Test
+    void countsExactlyWithinCapacity() {
+        TopK top = new TopK(4);
+        for (String key : new String[]{"a", "b", "a", "c", "a", "b"}) top.add(key, key.toUpperCase());
+        List<TopK.Entry> entries = top.top(10);
+        assertEquals(List.of("a", "b", "c"), entries.stream().map(e -> e.key).toList());
+        assertEquals(List.of(3L, 2L, 1L), entries.stream().map(e -> e.count).toList());
+        assertTrue(entries.stream().allMatch(e -> e.error == 0));
+        assertEquals("A", entries.get(0).label);
+    }
+
+    @Test
+    void newKeyEvictsTheSmallestAndInheritsItsCount() {
+        TopK top = new TopK(2);
+        top.add("a", "A");
+        top.add("a", "A");
+        top.add("b", "B");
+        top.add("c", "C");
+        assertEquals(2, top.size());
+        Map<String, TopK.Entry> entries = byKey(top.top(2));
+        assertFalse(entries.containsKey("b"));
+        assertEquals(2, entries.get("c").count);
+        assertEquals(1, entries.get("c").error);
+        assertEquals(2, entries.get("a").count);
+    }
+
+    @Test
+    void skewedStreamStaysWithinTheErrorBound() {
+        int capacity = 20;
+        TopK top = new TopK(capacity);
+        Map<String, Long> truth = new HashMap<>();
+        Random random = new Random(11);
+        int total = 50_000;
+        for (int i = 0; i < total; i++) {
+            // Roughly Zipf: a few popular titles over a long tail.
+            String key = "T" + (int) Math.floor(Math.pow(2000, random.nextDouble()));
+            top.add(key, key);
+            truth.merge(key, 1L, Long::sum);
+        }
+        Map<String, TopK.Entry> entries = byKey(top.top(capacity));
+        assertEquals(capacity, entries.size());
+        for (TopK.Entry e : entries.values()) {
+            long actual = truth.get(e.key);
+            assertTrue(e.count >= actual, e.key + " under-reported");
+            assertTrue(e.count - e.error <= actual, e.key + " error bound too small");
+        }
+        truth.forEach((key, count) -> {
+            if (count > total / capacity) assertTrue(entries.containsKey(key), key + " seen " + count + " times was evicted");
+        });
+        List<TopK.Entry> ordered = top.top(capacity);
+        for (int i = 1; i < ordered.size(); i++) assertTrue(ordered.get(i - 1).count >= ordered.get(i).count);
+    }
+
+    @Test
+    void restoredEntriesKeepCounting() {
+        TopK top = new TopK(2);
+        top.restore(new TopK.Entry("a", "A", 10, 3));
+        top.restore(new TopK.Entry("b", "B", 4, 0));
+        top.add("a", "A2");
+        top.add("c", "C");
+        Map<String, TopK.Entry> entries = byKey(top.top(2));
+        assertEquals(11, entries.get("a").count);
+        assertEquals(3, entries.get("a").error);
+        assertEquals("A2", entries.get("a").label);
+        assertEquals(5, entries.get("c").count);
+        assertEquals(4, entries.get("c").error);
+    }
+
+    @Test
+    void topCopiesEntries() {
+        TopK top = new TopK(2);
+        top.add("a", "A");
+        top.top(1).get(0).count = 100;
+        assertEquals(1, top.top(1).get(0).count);
+    }
+}